@@ -0,0 +1,104 @@
+package bench;
+
+import dao.SalesAnalytics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.DatabaseUtil;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thirty days of daily sales over two years of orders (20k orders, 200k
+ * lines): the join and GROUP BY the dashboard would otherwise run, the
+ * same figures from SalesAnalytics after an incremental refresh, and the
+ * full fork/join rebuild that refresh falls back to after an edit. The
+ * first two record a sale before reading, both because that is when the
+ * figures get looked at and because H2 would otherwise hand back the
+ * previous result of the unchanged query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Dpharma.analytics.refreshIntervalSec=0")
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+    private static final int ORDERS = 20_000;
+    private static final int DAYS = 730;
+    private static final String DAILY_SALES = "SELECT o.Order_Date, SUM(od.Quantity), SUM(od.Subtotal) " +
+                                              "FROM orders o JOIN orderdetails od ON od.Order_ID = o.Order_ID " +
+                                              "WHERE o.Order_Date BETWEEN ? AND ? " +
+                                              "GROUP BY o.Order_Date ORDER BY o.Order_Date";
+
+    private LocalDate from;
+    private LocalDate to;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchDatabase.init();
+        for (int i = 0; i < ORDERS; i++) {
+            BenchDatabase.createOrder(10);
+        }
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE orders SET Order_Date = DATEADD('DAY', -MOD(Order_ID, " + DAYS + "), CURRENT_DATE)");
+        }
+        to = LocalDate.now();
+        from = to.minusDays(29);
+        SalesAnalytics.refresh();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DatabaseUtil.closeConnection();
+    }
+
+    @Benchmark
+    public void sqlAggregate(Blackhole bh) throws SQLException {
+        BenchDatabase.createOrder(3);
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(DAILY_SALES)) {
+            pstmt.setDate(1, Date.valueOf(from));
+            pstmt.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    bh.consume(rs.getDate(1));
+                    bh.consume(rs.getLong(2));
+                    bh.consume(rs.getBigDecimal(3));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SalesAnalytics.DailySales> incrementalRefresh() throws SQLException {
+        BenchDatabase.createOrder(3);
+        SalesAnalytics.refresh();
+        return SalesAnalytics.getDailySales(from, to);
+    }
+
+    @Benchmark
+    public List<SalesAnalytics.DailySales> rebuild() throws SQLException {
+        SalesAnalytics.markStale();
+        SalesAnalytics.refresh();
+        return SalesAnalytics.getDailySales(from, to);
+    }
+}
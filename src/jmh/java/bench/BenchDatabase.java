@@ -0,0 +1,120 @@
+package bench;
+
+import util.DatabaseUtil;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * In-process H2 database in MySQL mode with the pharmacy schema, so the DAO
+ * and bill benchmarks run offline. Must be initialised before DatabaseUtil
+ * is first used, because the pool reads its URL once.
+ */
+public final class BenchDatabase {
+    public static final String URL = "jdbc:h2:mem:pharmsdb;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    public static final int CUSTOMERS = 1_000;
+    public static final int PRODUCTS = 1_000;
+
+    private static boolean initialised = false;
+
+    private BenchDatabase() {
+    }
+
+    public static synchronized void init() throws SQLException {
+        if (initialised) {
+            return;
+        }
+        System.setProperty("pharma.db.url", URL);
+        System.setProperty("pharma.db.user", "sa");
+        System.setProperty("pharma.db.password", "");
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE customer (Customer_ID INT AUTO_INCREMENT PRIMARY KEY, " +
+                         "Name VARCHAR(50), Phone VARCHAR(10), Email VARCHAR(100))");
+            stmt.execute("CREATE TABLE product (Product_ID INT AUTO_INCREMENT PRIMARY KEY, " +
+                         "Name VARCHAR(100), Price DECIMAL(10,2), Stock INT)");
+            stmt.execute("CREATE TABLE orders (Order_ID INT AUTO_INCREMENT PRIMARY KEY, " +
+                         "Customer_ID INT, Order_Date DATE)");
+            stmt.execute("CREATE TABLE orderdetails (OrderDetail_ID INT AUTO_INCREMENT PRIMARY KEY, " +
+                         "Order_ID INT, Product_ID INT, Quantity INT, " +
+                         "PriceAtPurchase DECIMAL(10,2), Subtotal DECIMAL(10,2))");
+            stmt.execute("CREATE INDEX idx_orderdetails_order ON orderdetails (Order_ID)");
+            stmt.execute("CREATE INDEX idx_orders_date ON orders (Order_Date)");
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO customer (Name, Phone, Email) VALUES (?, ?, ?)")) {
+                for (int i = 1; i <= CUSTOMERS; i++) {
+                    pstmt.setString(1, "Customer " + letters(i));
+                    pstmt.setString(2, String.format("98%08d", i));
+                    pstmt.setString(3, "customer" + i + "@example.com");
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO product (Name, Price, Stock) VALUES (?, ?, ?)")) {
+                for (int i = 1; i <= PRODUCTS; i++) {
+                    pstmt.setString(1, "Product " + letters(i) + " 500mg");
+                    pstmt.setBigDecimal(2, BigDecimal.valueOf(100 + i % 900, 2));
+                    pstmt.setInt(3, 1_000_000);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+        initialised = true;
+    }
+
+    /** Inserts an order with the given number of line items and returns its id. */
+    public static int createOrder(int lineItems) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            int orderId;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO orders (Customer_ID, Order_Date) VALUES (?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, 1 + lineItems % CUSTOMERS);
+                pstmt.setDate(2, Date.valueOf(LocalDate.now()));
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    keys.next();
+                    orderId = keys.getInt(1);
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO orderdetails (Order_ID, Product_ID, Quantity, PriceAtPurchase, Subtotal) " +
+                    "VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < lineItems; i++) {
+                    int quantity = 1 + i % 5;
+                    BigDecimal price = BigDecimal.valueOf(100 + i % 900, 2);
+                    pstmt.setInt(1, orderId);
+                    pstmt.setInt(2, 1 + i % PRODUCTS);
+                    pstmt.setInt(3, quantity);
+                    pstmt.setBigDecimal(4, price);
+                    pstmt.setBigDecimal(5, price.multiply(BigDecimal.valueOf(quantity)));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            return orderId;
+        }
+    }
+
+    // Names must pass ValidationUtil, which only allows letters and spaces
+    static String letters(int n) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import dao.BillGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a bill for the viewer: two queries, the archive lookup and the
+ * temporary file. The bill is rendered once and archived, so render shows
+ * what each call cost before the archive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillBenchmark {
+    @Param({"1", "50", "500"})
+    public int lineItems;
+
+    private BillGenerator billGenerator;
+    private int orderId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchDatabase.init();
+        billGenerator = new BillGenerator();
+        orderId = BenchDatabase.createOrder(lineItems);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DatabaseUtil.closeConnection();
+    }
+
+    @Benchmark
+    public byte[] render() throws SQLException, IOException {
+        return billGenerator.renderPdf(billGenerator.loadBill(orderId));
+    }
+
+    @Benchmark
+    public String generatePdf() throws SQLException, IOException {
+        return billGenerator.generateBill(orderId);
+    }
+
+    @Benchmark
+    public String generateHtml() throws SQLException, IOException {
+        return billGenerator.generateBill(orderId, BillGenerator.Format.HTML);
+    }
+}
@@ -0,0 +1,99 @@
+package bench;
+
+import dao.BillArchive;
+import dao.BillGenerator;
+import dao.BulkBillGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bills per second of the end-of-day run over a range of ORDERS orders
+ * with 1 to 8 line items. generate starts from an empty archive each time,
+ * so every bill is rendered; rerun goes over the same range again, where
+ * every bill is unchanged and skipped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkBillBenchmark {
+    private static final int ORDERS = 200;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private int firstOrderId;
+    private int lastOrderId;
+    private Path dir;
+    private BillArchive rerunArchive;
+    private BillArchive archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        BenchDatabase.init();
+        firstOrderId = BenchDatabase.createOrder(1);
+        lastOrderId = firstOrderId;
+        for (int i = 1; i < ORDERS; i++) {
+            lastOrderId = BenchDatabase.createOrder(1 + i % 8);
+        }
+        dir = Files.createTempDirectory("bulk-bills");
+        rerunArchive = BillArchive.open(dir.resolve("rerun"));
+        new BulkBillGenerator(new BillGenerator(rerunArchive), threads)
+            .generateBills(firstOrderId, lastOrderId, (_, _) -> { });
+    }
+
+    @Setup(Level.Invocation)
+    public void openEmptyArchive() throws IOException {
+        archive = BillArchive.open(Files.createTempDirectory(dir, "generate"));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeArchive() throws IOException {
+        archive.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rerunArchive.close();
+        DatabaseUtil.closeConnection();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public BulkBillGenerator.Result generate() throws SQLException, IOException {
+        return new BulkBillGenerator(new BillGenerator(archive), threads)
+            .generateBills(firstOrderId, lastOrderId, (_, _) -> { });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public BulkBillGenerator.Result rerun() throws SQLException, IOException {
+        return new BulkBillGenerator(new BillGenerator(rerunArchive), threads)
+            .generateBills(firstOrderId, lastOrderId, (_, _) -> { });
+    }
+}
@@ -0,0 +1,95 @@
+package bench;
+
+import dao.OrderCheckout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkouts per second with 32 counters selling at once. With hotProducts
+ * at 20 most carts share a product with some other checkout in flight, so
+ * this measures lock queueing and retries; at 1000 carts rarely collide.
+ * After the run, the stock taken from the products must equal the
+ * quantities in orderdetails, or the trial fails.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+    private static final String TOTALS = "SELECT (SELECT SUM(Stock) FROM product), " +
+                                         "(SELECT COALESCE(SUM(Quantity), 0) FROM orderdetails)";
+
+    @Param({"20", "1000"})
+    public int hotProducts;
+
+    private OrderCheckout checkout;
+    private long stockBefore;
+    private long soldBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchDatabase.init();
+        checkout = new OrderCheckout();
+        long[] totals = totals();
+        stockBefore = totals[0];
+        soldBefore = totals[1];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try {
+            long[] totals = totals();
+            long taken = stockBefore - totals[0];
+            long sold = totals[1] - soldBefore;
+            if (taken != sold) {
+                throw new IllegalStateException("Stock decreased by " + taken + " but " + sold + " units were sold");
+            }
+        } finally {
+            DatabaseUtil.closeConnection();
+        }
+    }
+
+    @Benchmark
+    public int checkout() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int items = 1 + random.nextInt(4);
+        List<OrderCheckout.Line> cart = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            cart.add(new OrderCheckout.Line(1 + random.nextInt(hotProducts), 1 + random.nextInt(3)));
+        }
+        return checkout.checkout(1 + random.nextInt(BenchDatabase.CUSTOMERS), cart);
+    }
+
+    private static long[] totals() throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(TOTALS)) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import dao.BatchResult;
+import dao.PharmacyDAO;
+import dao.QueryCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * DAO throughput against the embedded database. insertPerRow and
+ * insertBatch both report rows per second, so they compare the per-row
+ * path directly with the batched one. selectWholeTable and its uncached
+ * twin compare a query cache hit with a read from the database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+    private static final int ROWS = 100;
+
+    private PharmacyDAO dao;
+    private final Vector<String> productColumns = new Vector<>(List.of("Name", "Price", "Stock"));
+    private List<Vector<String>> productRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchDatabase.init();
+        dao = new PharmacyDAO();
+        productRows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            productRows.add(new Vector<>(List.of("Bench product " + BenchDatabase.letters(i), "12.50", "10")));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DatabaseUtil.closeConnection();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insertPerRow() throws SQLException {
+        for (Vector<String> row : productRows) {
+            dao.insertRecord("product", productColumns, row);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public BatchResult insertBatch() throws SQLException {
+        return dao.insertRecords("product", productColumns, productRows);
+    }
+
+    @Benchmark
+    public List<Object[]> selectPage() throws SQLException {
+        int from = ThreadLocalRandom.current().nextInt(BenchDatabase.CUSTOMERS);
+        return dao.getTablePage("customer", "Customer_ID", from, false, 200);
+    }
+
+    // Served from QueryCache after the first call
+    @Benchmark
+    public DefaultTableModel selectWholeTable() throws SQLException {
+        return dao.getTableData("customer");
+    }
+
+    // What every call cost before the cache, and what a miss costs now
+    @Benchmark
+    public DefaultTableModel selectWholeTableUncached() throws SQLException {
+        QueryCache.invalidate("customer");
+        return dao.getTableData("customer");
+    }
+}
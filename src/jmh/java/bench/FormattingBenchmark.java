@@ -0,0 +1,80 @@
+package bench;
+
+import dao.BillGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting cost of one bill: the date header, every line amount and the
+ * total. "legacy" is the old SimpleDateFormat / double / String.format
+ * path (with the lock a shared SimpleDateFormat needs), "current" is what
+ * BillGenerator does now. Runs on four threads to include contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class FormattingBenchmark {
+    private static final SimpleDateFormat LEGACY_DATE = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+
+    @Param({"1", "50", "500"})
+    public int lineItems;
+
+    private double[] doubleAmounts;
+    private BigDecimal[] decimalAmounts;
+
+    @Setup
+    public void setUp() {
+        doubleAmounts = new double[lineItems];
+        decimalAmounts = new BigDecimal[lineItems];
+        for (int i = 0; i < lineItems; i++) {
+            decimalAmounts[i] = BigDecimal.valueOf(100 + i * 37L % 90_000, 2);
+            doubleAmounts[i] = decimalAmounts[i].doubleValue();
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        synchronized (LEGACY_DATE) {
+            bh.consume(LEGACY_DATE.format(new Date()));
+        }
+        double total = 0.0;
+        for (double amount : doubleAmounts) {
+            total += amount;
+            bh.consume(String.format("%.2f", amount));
+        }
+        bh.consume(String.format("%.2f", total));
+    }
+
+    @Benchmark
+    public void current(Blackhole bh) {
+        bh.consume(DATE.format(LocalDateTime.now()));
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : decimalAmounts) {
+            total = total.add(amount);
+            bh.consume(BillGenerator.formatMoney(amount));
+        }
+        bh.consume(BillGenerator.formatMoney(total));
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import dao.CsvImporter;
+import dao.PharmacyDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV import throughput in rows per second, end to end: parsing,
+ * validation, batched inserts and the reject file. One row in a hundred has
+ * a bad phone number and ends up in the reject file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+    private static final int ROWS = 100_000;
+
+    private CsvImporter importer;
+    private Path csvFile;
+    private Path rejectFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        BenchDatabase.init();
+        importer = new CsvImporter(new PharmacyDAO());
+        csvFile = Files.createTempFile("customers", ".csv");
+        rejectFile = Files.createTempFile("customers", ".rejects.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+            out.write("Name,Phone,Email\n");
+            for (int i = 0; i < ROWS; i++) {
+                String phone = i % 100 == 0 ? "12345" : String.format("97%08d", i);
+                out.write("Imported " + BenchDatabase.letters(i) + "," + phone + ",imported" + i + "@example.com\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvFile);
+        Files.deleteIfExists(rejectFile);
+        DatabaseUtil.closeConnection();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public CsvImporter.Result importCustomers() throws SQLException, IOException {
+        return importer.importFile("customer", csvFile, rejectFile, (_, _, _, _) -> { });
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import dao.PharmacyDAO;
+import dao.WriteJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of a single-row insert while the database is unreachable, when it
+ * goes to the write journal, next to the same insert reaching the in-memory
+ * database. The replay thread is held off so the journal only grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+    private static final Vector<String> COLUMNS = new Vector<>(List.of("Name", "Phone", "Email"));
+    private static final Vector<String> VALUES =
+        new Vector<>(List.of("Journal Customer", "9123456789", "journal@example.com"));
+
+    private Path dir;
+    private WriteJournal journal;
+    private PharmacyDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        dir = Files.createTempDirectory("journal-bench");
+        // Read once WriteJournal is loaded, which is not before here
+        System.setProperty("pharma.journal.dir", dir.resolve("default").toString());
+        System.setProperty("pharma.journal.retryMs", "3600000");
+        BenchDatabase.init();
+        journal = WriteJournal.open(dir.resolve("raw"));
+        dao = new PharmacyDAO();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        WriteJournal.getDefault().close();
+        DatabaseUtil.closeConnection();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return journal.append(WriteJournal.Op.INSERT, "customer", COLUMNS, VALUES);
+    }
+
+    @Benchmark
+    public Object insertOffline() throws SQLException, IOException {
+        WriteJournal.getDefault().markOffline();
+        return dao.insertRecord("customer", COLUMNS, VALUES);
+    }
+
+    @Benchmark
+    public Object insertOnline() throws SQLException {
+        return dao.insertRecord("customer", COLUMNS, VALUES);
+    }
+}
@@ -0,0 +1,128 @@
+package bench;
+
+import dao.PharmacyDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import util.DatabaseUtil;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read throughput of the primary alone and with one or two replicas, each
+ * an embedded H2 database copied from the primary. Every database gets a
+ * pool of -Dpharma.pool.maxSize connections, standing for what one server
+ * can serve at once.
+ *
+ * Embedded databases share this JVM's processors, so a read that is all
+ * CPU shows the routing cost rather than any scaling: that is getRow.
+ * getRowWithServiceTime reads through a view that holds each query for
+ * SERVICE_MS, like the round trip and disk time of a database server,
+ * which is where replicas add capacity.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ReplicaBenchmark {
+    private static final int POOL_SIZE = 4;
+    private static final int SERVICE_MS = 2;
+    private static final String SLOW_VIEW = "customer_remote";
+
+    @Param({"0", "1", "2"})
+    public int replicas;
+
+    private Path script;
+    private PharmacyDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        // Read once DatabaseUtil and QueryCache are loaded, which is not before here;
+        // the replica pools themselves start on the first read, once the copies exist
+        StringBuilder urls = new StringBuilder();
+        for (int i = 1; i <= replicas; i++) {
+            urls.append(i > 1 ? "," : "").append(replicaUrl(i));
+        }
+        System.setProperty("pharma.db.replicas", urls.toString());
+        System.setProperty("pharma.pool.maxSize", String.valueOf(POOL_SIZE));
+        System.setProperty("pharma.queryCache.ttlMs", "0");
+        BenchDatabase.init();
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE ALIAS IF NOT EXISTS SERVICE_TIME FOR 'bench.ReplicaBenchmark.serviceTime'");
+            stmt.execute("CREATE VIEW IF NOT EXISTS " + SLOW_VIEW + " AS SELECT * FROM customer " +
+                         "WHERE SERVICE_TIME(" + SERVICE_MS + ") = 0");
+        }
+
+        if (replicas > 0) {
+            script = Files.createTempFile("replica", ".sql");
+            try (Connection conn = DatabaseUtil.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("SCRIPT TO '" + script + "'");
+            }
+            for (int i = 1; i <= replicas; i++) {
+                try (Connection conn = DriverManager.getConnection(replicaUrl(i), "sa", "");
+                     Statement stmt = conn.createStatement()) {
+                    stmt.execute("RUNSCRIPT FROM '" + script + "'");
+                }
+            }
+        }
+        dao = new PharmacyDAO();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (DatabaseUtil.ReplicaStats replica : DatabaseUtil.getReplicaStats()) {
+            System.out.println(replica);
+        }
+        DatabaseUtil.closeConnection();
+        if (script != null) {
+            Files.delete(script);
+        }
+    }
+
+    @Benchmark
+    public Object[] getRow() throws SQLException {
+        return dao.getRow("customer", "Customer_ID", randomCustomer());
+    }
+
+    @Benchmark
+    public Object[] getRowWithServiceTime() throws SQLException {
+        return dao.getRow(SLOW_VIEW, "Customer_ID", randomCustomer());
+    }
+
+    private static String replicaUrl(int i) {
+        return BenchDatabase.URL.replace("mem:pharmsdb", "mem:replica" + i);
+    }
+
+    private static int randomCustomer() {
+        return 1 + ThreadLocalRandom.current().nextInt(BenchDatabase.CUSTOMERS);
+    }
+
+    // Called by the databases through the SERVICE_TIME alias
+    public static int serviceTime(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return 0;
+    }
+}
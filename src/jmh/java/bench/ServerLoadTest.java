@@ -0,0 +1,145 @@
+package bench;
+
+import server.PharmaServer;
+import util.DatabaseUtil;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of the HTTP service against the embedded database:
+ * each client sends its next request as soon as the previous one is
+ * answered, and the run reports requests per second and latency
+ * percentiles. Not a JMH benchmark, run it with
+ * {@code java -cp target/benchmarks.jar bench.ServerLoadTest [clients] [seconds]}.
+ *
+ * The request mix is what a counter does: mostly customer and product
+ * pages, some searches, and a bill now and then. Bills are re-requested
+ * with their ETag, as a browser would.
+ */
+public final class ServerLoadTest {
+    private static final int ORDERS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        BenchDatabase.init();
+        for (int i = 0; i < ORDERS; i++) {
+            BenchDatabase.createOrder(1 + i % 20);
+        }
+
+        try (PharmaServer server = PharmaServer.start(0)) {
+            String base = "http://127.0.0.1:" + server.getPort() + "/api/";
+            HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+            // Warm up the JIT, the pool and the caches
+            run(http, base, clients, 5);
+            Result result = run(http, base, clients, seconds);
+            result.print(clients, seconds);
+        } finally {
+            DatabaseUtil.closeConnection();
+        }
+    }
+
+    private static Result run(HttpClient http, String base, int clients, int seconds) throws InterruptedException {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>(clients);
+        int[] counts = new int[clients];
+        LongAdder errors = new LongAdder();
+        LongAdder notModified = new LongAdder();
+
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            long[] samples = new long[1 << 20];
+            latencies.add(samples);
+            threads.add(Thread.ofVirtual().start(() -> {
+                String[] billTags = new String[ORDERS + 1];
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int n = 0;
+                while (System.nanoTime() < end && n < samples.length) {
+                    int pick = random.nextInt(100);
+                    int orderId = 1 + random.nextInt(ORDERS);
+                    HttpRequest.Builder request = HttpRequest.newBuilder()
+                        .header("Accept-Encoding", "gzip")
+                        .timeout(Duration.ofSeconds(30));
+                    if (pick < 50) {
+                        int after = random.nextInt(BenchDatabase.CUSTOMERS);
+                        request.uri(URI.create(base + "tables/customer?limit=50&after=" + after));
+                    } else if (pick < 75) {
+                        int after = random.nextInt(BenchDatabase.PRODUCTS);
+                        request.uri(URI.create(base + "tables/product?limit=50&after=" + after));
+                    } else if (pick < 90) {
+                        String prefix = BenchDatabase.letters(1 + random.nextInt(BenchDatabase.CUSTOMERS));
+                        request.uri(URI.create(base + "tables/customer?column=Name&q=Customer%20" + prefix));
+                    } else {
+                        request.uri(URI.create(base + "bills/" + orderId + "?format=html"));
+                        if (billTags[orderId] != null) {
+                            request.header("If-None-Match", billTags[orderId]);
+                        }
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = http.send(request.build(),
+                            HttpResponse.BodyHandlers.ofByteArray());
+                        samples[n++] = System.nanoTime() - start;
+                        if (response.statusCode() == 304) {
+                            notModified.increment();
+                        } else if (response.statusCode() != 200) {
+                            errors.increment();
+                        } else if (pick >= 90) {
+                            billTags[orderId] = response.headers().firstValue("ETag").orElse(null);
+                        }
+                    } catch (Exception e) {
+                        samples[n++] = System.nanoTime() - start;
+                        errors.increment();
+                    }
+                }
+                counts[client] = n;
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int offset = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies.get(c), 0, all, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(all);
+        return new Result(all, errors.sum(), notModified.sum());
+    }
+
+    private record Result(long[] sortedNanos, long errors, long notModified) {
+        double percentileMillis(double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(0, index)] / 1e6;
+        }
+
+        void print(int clients, int seconds) {
+            System.out.printf("%d clients, %d s: %d requests, %.0f req/s, %d errors, %d not modified%n",
+                clients, seconds, sortedNanos.length, sortedNanos.length / (double) seconds, errors, notModified);
+            System.out.printf("latency ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(99.9),
+                percentileMillis(100));
+        }
+    }
+}
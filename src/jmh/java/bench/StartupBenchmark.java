@@ -0,0 +1,133 @@
+package bench;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Frame;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.JComboBox;
+import javax.swing.SwingUtilities;
+
+/**
+ * Time from launching the JVM to the first interactive window, over fresh
+ * processes because startup happens once per JVM. Not a JMH benchmark, and
+ * it needs a display. Run it with
+ * {@code java -cp target/benchmarks.jar bench.StartupBenchmark [runs] [JVM options...]},
+ * e.g. once as is and once with {@code -XX:SharedArchiveFile=target/pharma.jsa}
+ * or {@code -Dpharma.startup.warmUp=false}.
+ *
+ * Each run starts PharmaCRUDApp against an empty in-memory H2 database and
+ * reports when a window is showing and the event thread has handled an
+ * event after it (interactive), then when the table list has arrived.
+ */
+public final class StartupBenchmark {
+    private static final String PROBE = "--probe";
+    private static final long TIMEOUT_MS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals(PROBE)) {
+            probe();
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<String> jvmOptions = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of();
+
+        long[] interactive = new long[runs];
+        long[] tables = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmOptions);
+            command.add("-Dpharma.db.url=" + BenchDatabase.URL);
+            command.add("-Dpharma.db.user=sa");
+            command.add("-Dpharma.db.password=");
+            command.add("-Dpharma.metrics.logIntervalSec=0");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(StartupBenchmark.class.getName());
+            command.add(PROBE);
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String result = null;
+            try (BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line; (line = out.readLine()) != null; ) {
+                    if (line.startsWith("startup ")) {
+                        result = line;
+                    }
+                }
+            }
+            process.waitFor();
+            if (result == null) {
+                throw new IllegalStateException("Run " + (run + 1) + " reported nothing, exit code " + process.exitValue());
+            }
+            String[] fields = result.split(" ");
+            interactive[run] = Long.parseLong(fields[1]);
+            tables[run] = Long.parseLong(fields[2]);
+            System.out.printf("run %d: interactive %d ms, tables %d ms%n", run + 1, interactive[run], tables[run]);
+        }
+        print("interactive", interactive);
+        print("tables     ", tables);
+    }
+
+    private static void print(String label, long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s min %d ms, median %d ms, max %d ms%n",
+            label, sorted[0], sorted[sorted.length / 2], sorted[sorted.length - 1]);
+    }
+
+    // Runs in the child JVM: starts the application and watches for its window
+    private static void probe() throws Exception {
+        long launched = ProcessHandle.current().info().startInstant().orElseThrow().toEpochMilli();
+        // The application is in the unnamed package, so it can only be reached reflectively
+        Class.forName("PharmaCRUDApp").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        long interactive = 0;
+        while (System.currentTimeMillis() < deadline) {
+            boolean[] state = new boolean[2];
+            // invokeAndWait returning is itself the proof the event thread is responsive
+            SwingUtilities.invokeAndWait(() -> {
+                for (Frame frame : Frame.getFrames()) {
+                    if (frame.isShowing()) {
+                        state[0] = true;
+                        JComboBox<?> tableSelector = findComboBox(frame);
+                        state[1] = tableSelector != null && tableSelector.getItemCount() > 0;
+                    }
+                }
+            });
+            long now = System.currentTimeMillis();
+            if (state[0] && interactive == 0) {
+                interactive = now - launched;
+            }
+            if (state[1]) {
+                System.out.println("startup " + interactive + " " + (now - launched));
+                System.exit(0);
+            }
+            Thread.sleep(2);
+        }
+        System.exit(1);
+    }
+
+    // The table selector is the first combo box in the window
+    private static JComboBox<?> findComboBox(Container container) {
+        for (Component component : container.getComponents()) {
+            if (component instanceof JComboBox<?> comboBox) {
+                return comboBox;
+            }
+            if (component instanceof Container child) {
+                JComboBox<?> found = findComboBox(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.RowValidator;
+import util.ValidationUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Row validation throughput. The legacy* benchmarks run a copy of the old
+ * regex and name-scan ValidationUtil, the others the compiled RowValidator
+ * (through ValidationUtil for single rows, compiled once for the batch).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    private static final int BATCH = 10_000;
+
+    private final Vector<String> customerColumns = new Vector<>(List.of("Name", "Phone", "Email"));
+    private final Vector<String> validCustomer = new Vector<>(List.of("Asha Patil", "9876543210", "asha@example.com"));
+    private final Vector<String> invalidCustomer = new Vector<>(List.of("Asha Patil", "98765", "asha@example.com"));
+
+    private final Vector<String> productColumns = new Vector<>(List.of("Name", "Price", "Stock"));
+    private final Vector<String> validProduct = new Vector<>(List.of("Paracetamol 500mg", "24.50", "100"));
+
+    private List<Vector<String>> customerBatch;
+
+    @Setup
+    public void setUp() {
+        customerBatch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String phone = i % 100 == 0 ? "98765" : String.format("98%08d", i);
+            customerBatch.add(new Vector<>(List.of("Customer " + BenchDatabase.letters(i), phone,
+                "customer" + i + "@example.com")));
+        }
+    }
+
+    @Benchmark
+    public String validCustomer() {
+        return ValidationUtil.validateCustomerData(customerColumns, validCustomer);
+    }
+
+    @Benchmark
+    public String invalidCustomer() {
+        return ValidationUtil.validateCustomerData(customerColumns, invalidCustomer);
+    }
+
+    @Benchmark
+    public String validProduct() {
+        return ValidationUtil.validateProductData(productColumns, validProduct);
+    }
+
+    @Benchmark
+    public String legacyValidCustomer() {
+        return Legacy.validateCustomerData(customerColumns, validCustomer);
+    }
+
+    @Benchmark
+    public String legacyValidProduct() {
+        return Legacy.validateProductData(productColumns, validProduct);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void customerBatch(Blackhole bh) {
+        RowValidator validator = RowValidator.forColumns("customer", customerColumns);
+        for (Vector<String> row : customerBatch) {
+            bh.consume(validator.validateAll(row));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void legacyCustomerBatch(Blackhole bh) {
+        for (Vector<String> row : customerBatch) {
+            bh.consume(Legacy.validateCustomerData(customerColumns, row));
+        }
+    }
+
+    // ValidationUtil as it was before RowValidator
+    private static final class Legacy {
+        private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
+        private static final Pattern PHONE_PATTERN = Pattern.compile("^\\d{10}$");
+        private static final Pattern NAME_PATTERN = Pattern.compile("^[A-Za-z\\s]{2,50}$");
+        private static final Pattern PRICE_PATTERN = Pattern.compile("^\\d+(\\.\\d{1,2})?$");
+
+        static String validateCustomerData(Vector<String> columnNames, Vector<String> values) {
+            String name = null;
+            String phone = null;
+            String email = null;
+            for (int i = 0; i < columnNames.size(); i++) {
+                String value = values.get(i);
+                switch (columnNames.get(i).toLowerCase()) {
+                    case "name" -> name = value;
+                    case "phone" -> phone = value;
+                    case "email" -> email = value;
+                    default -> { }
+                }
+            }
+            if (name != null && !NAME_PATTERN.matcher(name).matches()) {
+                return "Invalid Name. Must be 2-50 characters long and contain only letters and spaces.";
+            }
+            if (phone != null && !PHONE_PATTERN.matcher(phone).matches()) {
+                return "Invalid Phone Number. Must be 10 digits.";
+            }
+            if (email != null && !EMAIL_PATTERN.matcher(email).matches()) {
+                return "Invalid Email Format.";
+            }
+            return null;
+        }
+
+        static String validateProductData(Vector<String> columnNames, Vector<String> values) {
+            String name = null;
+            String price = null;
+            for (int i = 0; i < columnNames.size(); i++) {
+                String value = values.get(i);
+                switch (columnNames.get(i).toLowerCase()) {
+                    case "name" -> name = value;
+                    case "price" -> price = value;
+                    default -> { }
+                }
+            }
+            if (name != null && name.trim().isEmpty()) {
+                return "Product name cannot be empty.";
+            }
+            if (price != null && !PRICE_PATTERN.matcher(price).matches()) {
+                return "Invalid Price Format. Must be a number with up to 2 decimal places.";
+            }
+            return null;
+        }
+    }
+}
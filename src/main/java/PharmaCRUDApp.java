@@ -1,97 +1,285 @@
+import dao.AsyncPharmacyDAO;
 import dao.PharmacyDAO;
+import dao.BillArchive;
 import dao.BillGenerator;
+import dao.BulkBillGenerator;
+import dao.CsvImporter;
+import dao.TableChangeFeed;
+import dao.TableMetadata;
+import dao.UpdateConflictException;
+import dao.WriteJournal;
+import server.PharmaServer;
+import ui.PagedTableModel;
+import ui.SalesDashboard;
+import ui.SwingAsync;
+import ui.TableChangePoller;
+import ui.TableSearchIndex;
 import util.DatabaseUtil;
+import util.Metrics;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
 // import javax.swing.text.html.HTMLEditorKit;
 // import javax.swing.text.html.StyleSheet;
 import java.awt.*;
-import java.sql.SQLException;
+import java.util.BitSet;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 import java.awt.Desktop;
 import java.io.File;
 // import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.sql.SQLException;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Map;
 
 public class PharmaCRUDApp extends JFrame {
+    // Rows fetched per round trip when browsing a table page by page
+    private static final int PAGE_SIZE = 200;
+    // Pause in typing before the search runs
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final String ALL_COLUMNS = "All columns";
+    // Load metadata and the bill renderer in the background once the window is up
+    private static final boolean WARM_UP = Boolean.parseBoolean(System.getProperty("pharma.startup.warmUp", "true"));
+
     private final PharmacyDAO dao;
-    private final BillGenerator billGenerator;
+    private final AsyncPharmacyDAO async;
     private JComboBox<String> tableSelector;
     private JTable table;
-    private DefaultTableModel model;
+    private TableModel model;
     private Vector<String> columnNames;
 
+    // The loaded table; model differs from it while database search results are shown
+    private TableModel baseModel;
+    private String baseTable;
+    private TableSearchIndex searchIndex;
+    private JTextField searchField;
+    private JComboBox<String> searchColumn;
+    private Timer searchDelay;
+    private TableChangePoller changePoller;
+
+    private record LoadedTable(TableModel model, TableChangeFeed feed) {
+    }
+
     public PharmaCRUDApp() {
         dao = new PharmacyDAO();
-        billGenerator = new BillGenerator();
+        async = new AsyncPharmacyDAO(dao, new BillGenerator());
         initializeGUI();
     }
 
+    /**
+     * The window's components, laid out in the given container. Kept apart
+     * from the frame and the listeners so the CDS training run, which has no
+     * display, builds the same ones a session starts with.
+     */
+    private record Controls(JComboBox<String> tableSelector, JButton loadBtn, JButton insertBtn, JButton updateBtn,
+                            JButton deleteBtn, JButton generateBillBtn, JButton importBtn, JButton exportBtn,
+                            JButton dashboardBtn, JTable table, JTextField searchField,
+                            JComboBox<String> searchColumn) {
+
+        static Controls create(Container content) {
+            Controls controls = new Controls(new JComboBox<>(), new JButton("Load Table"), new JButton("Insert"),
+                new JButton("Update"), new JButton("Delete"), new JButton("Generate Bill"),
+                new JButton("Import CSV"), new JButton("Export"), new JButton("Dashboard"),
+                new JTable(new DefaultTableModel()), new JTextField(20),
+                new JComboBox<>(new String[]{ALL_COLUMNS}));
+            controls.table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+            JPanel topPanel = new JPanel();
+            topPanel.add(new JLabel("Select Table:"));
+            topPanel.add(controls.tableSelector);
+            topPanel.add(controls.loadBtn);
+            topPanel.add(controls.insertBtn);
+            topPanel.add(controls.updateBtn);
+            topPanel.add(controls.deleteBtn);
+            topPanel.add(controls.generateBillBtn);
+            topPanel.add(controls.importBtn);
+            topPanel.add(controls.exportBtn);
+            topPanel.add(controls.dashboardBtn);
+
+            JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            searchPanel.add(new JLabel("Search:"));
+            searchPanel.add(controls.searchField);
+            searchPanel.add(new JLabel("in"));
+            searchPanel.add(controls.searchColumn);
+
+            content.add(topPanel, BorderLayout.NORTH);
+            content.add(new JScrollPane(controls.table), BorderLayout.CENTER);
+            content.add(searchPanel, BorderLayout.SOUTH);
+            return controls;
+        }
+    }
+
     private void initializeGUI() {
         setTitle("PharmaDB CRUD Application");
         setSize(900, 500);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        tableSelector = new JComboBox<>();
-        JButton loadBtn = new JButton("Load Table");
-        JButton insertBtn = new JButton("Insert");
-        JButton updateBtn = new JButton("Update");
-        JButton deleteBtn = new JButton("Delete");
-        JButton generateBillBtn = new JButton("Generate Bill");
-
-        model = new DefaultTableModel();
-        table = new JTable(model);
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-
-        JPanel topPanel = new JPanel();
-        topPanel.add(new JLabel("Select Table:"));
-        topPanel.add(tableSelector);
-        topPanel.add(loadBtn);
-        topPanel.add(insertBtn);
-        topPanel.add(updateBtn);
-        topPanel.add(deleteBtn);
-        topPanel.add(generateBillBtn);
-
-        add(topPanel, BorderLayout.NORTH);
-        add(new JScrollPane(table), BorderLayout.CENTER);
+        Controls controls = Controls.create(getContentPane());
+        tableSelector = controls.tableSelector();
+        table = controls.table();
+        model = table.getModel();
+        searchField = controls.searchField();
+        searchColumn = controls.searchColumn();
+        // Other counters' writes show up in the open grid without a reload
+        changePoller = new TableChangePoller(async, table, this::refreshSearchIndex, this::reloadChangedTable);
+
+        // Search as the user types, once typing pauses
+        searchDelay = new Timer(SEARCH_DELAY_MS, _ -> runSearch());
+        searchDelay.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDelay.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDelay.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchDelay.restart();
+            }
+        });
+        searchColumn.addActionListener(_ -> searchDelay.restart());
 
         loadTableNames();
 
-        loadBtn.addActionListener(_ -> loadSelectedTable());
-        insertBtn.addActionListener(_ -> insertRow());
-        updateBtn.addActionListener(_ -> updateRow());
-        deleteBtn.addActionListener(_ -> deleteRow());
-        generateBillBtn.addActionListener(_ -> generateBill());
+        controls.loadBtn().addActionListener(_ -> loadSelectedTable());
+        controls.insertBtn().addActionListener(_ -> insertRow());
+        controls.updateBtn().addActionListener(_ -> updateRow());
+        controls.deleteBtn().addActionListener(_ -> deleteRow());
+        controls.generateBillBtn().addActionListener(_ -> generateBill());
+        controls.importBtn().addActionListener(_ -> importCsv());
+        controls.exportBtn().addActionListener(_ -> exportTable());
+        controls.dashboardBtn().addActionListener(_ -> new SalesDashboard(this, async).setVisible(true));
     }
 
     private void loadTableNames() {
-        try {
-            Vector<String> tables = dao.getTableNames();
+        SwingAsync.onEdt(async.getTableNames(), tables -> {
             tableSelector.removeAllItems();
             tables.forEach(tableSelector::addItem);
-        } catch (SQLException e) {
-            showError("Error loading tables", e);
-        }
+        }, e -> showError("Error loading tables", e));
     }
 
     private void loadSelectedTable() {
         String selectedTable = (String) tableSelector.getSelectedItem();
         if (selectedTable == null) return;
 
-        try {
-            model = dao.getTableData(selectedTable);
-            table.setModel(model);
-            columnNames = new Vector<>();
-            for (int i = 0; i < model.getColumnCount(); i++) {
-                columnNames.add(model.getColumnName(i));
+        // A newer load cancels one still running, e.g. when switching tables quickly
+        CompletableFuture<LoadedTable> load = async.submitLatest("load-table", () -> {
+            // Opened first, so writes made while the rows are read are still reported
+            TableMetadata metadata = dao.getTableMetadata(selectedTable);
+            TableChangeFeed feed = TableChangeFeed.open(metadata);
+            // Served from memory when cached (the product catalog)
+            TableModel cached = dao.getCachedTableData(selectedTable);
+            if (cached != null) {
+                return new LoadedTable(cached, feed);
+            }
+            // Tables with a single-column primary key are paged, the rest are loaded whole
+            if (metadata.getPrimaryKeyColumn() != null) {
+                int rowCount = dao.getRowCount(selectedTable);
+                return new LoadedTable(new PagedTableModel(async, metadata, rowCount, PAGE_SIZE), feed);
             }
-        } catch (SQLException e) {
-            showError("Error loading table data", e);
+            return new LoadedTable(dao.getTableData(selectedTable), feed);
+        });
+
+        SwingAsync.onEdt(load, result -> {
+            TableModel loaded = result.model();
+            baseModel = loaded;
+            baseTable = selectedTable;
+            searchIndex = null;
+            showModel(loaded);
+            changePoller.watch(loaded, result.feed());
+
+            Vector<String> searchColumns = new Vector<>(columnNames);
+            searchColumns.add(0, ALL_COLUMNS);
+            Object selectedColumn = searchColumn.getSelectedItem();
+            searchColumn.setModel(new DefaultComboBoxModel<>(searchColumns));
+            if (searchColumns.contains(selectedColumn)) {
+                searchColumn.setSelectedItem(selectedColumn);
+            }
+            // Keep the current search applied across reloads
+            runSearch();
+        }, e -> showError("Error loading table data", e));
+    }
+
+    // A cached copy would hand back the rows the poll just found to be out of date
+    private void reloadChangedTable() {
+        if (baseTable != null) {
+            dao.invalidateCachedTableData(baseTable);
         }
+        loadSelectedTable();
+    }
+
+    private void showModel(TableModel shown) {
+        table.setRowSorter(null);
+        model = shown;
+        table.setModel(model);
+        columnNames = new Vector<>();
+        for (int i = 0; i < model.getColumnCount(); i++) {
+            columnNames.add(model.getColumnName(i));
+        }
+    }
+
+    /**
+     * Fully loaded tables are filtered in memory through a search index;
+     * paged tables are not in memory, so the database does the filtering and
+     * the results replace the grid until the search is cleared.
+     */
+    private void runSearch() {
+        searchDelay.stop();
+        if (baseModel == null) return;
+
+        String text = searchField.getText().trim();
+        String column = searchColumn.getSelectedIndex() > 0 ? (String) searchColumn.getSelectedItem() : null;
+
+        if (baseModel instanceof DefaultTableModel) {
+            if (searchIndex == null) {
+                searchIndex = TableSearchIndex.build(baseModel);
+            }
+            int columnIndex = column != null ? columnNames.indexOf(column) : -1;
+            BitSet matches = searchIndex.search(text, columnIndex);
+            if (matches == null) {
+                table.setRowSorter(null);
+                return;
+            }
+            TableRowSorter<TableModel> sorter = new TableRowSorter<>(baseModel);
+            sorter.setRowFilter(new RowFilter<TableModel, Integer>() {
+                @Override
+                public boolean include(Entry<? extends TableModel, ? extends Integer> entry) {
+                    return matches.get(entry.getIdentifier());
+                }
+            });
+            table.setRowSorter(sorter);
+            return;
+        }
+
+        if (text.isEmpty()) {
+            if (model != baseModel) {
+                showModel(baseModel);
+            }
+            return;
+        }
+
+        TableModel searchedModel = baseModel;
+        String searchedTable = baseTable;
+        CompletableFuture<DefaultTableModel> search =
+            async.submitLatest("search", () -> dao.searchTable(searchedTable, column, text));
+        SwingAsync.onEdt(search, results -> {
+            // Ignore results for a table that has since been replaced
+            if (baseModel == searchedModel) {
+                showModel(results);
+            }
+        }, e -> showError("Error searching " + searchedTable, e));
     }
 
     private void insertRow() {
@@ -120,13 +308,20 @@ public class PharmaCRUDApp extends JFrame {
                 values.add(field.getText().trim());
             }
 
-            try {
-                dao.insertRecord((String) tableSelector.getSelectedItem(), insertColumnNames, values);
-                loadSelectedTable();
-                JOptionPane.showMessageDialog(this, "Record inserted successfully!");
-            } catch (SQLException e) {
-                showError("Error inserting record", e);
-            }
+            String tableName = (String) tableSelector.getSelectedItem();
+            CompletableFuture<Object[]> insert = async.submit(() -> {
+                Object key = dao.insertRecord(tableName, insertColumnNames, values);
+                // A journaled row is not in the database yet, it shows up once replayed
+                return key == null || dao.isOffline() ? null : dao.getRow(tableName, dao.getPrimaryKeyColumn(tableName), key);
+            });
+            SwingAsync.onEdt(insert, row -> {
+                if (row != null) {
+                    showInsertedRow(tableName, row);
+                } else if (!dao.isOffline()) {
+                    loadSelectedTable();
+                }
+                JOptionPane.showMessageDialog(this, savedMessage("inserted"));
+            }, e -> showError("Error inserting record", e));
         }
     }
 
@@ -136,15 +331,20 @@ public class PharmaCRUDApp extends JFrame {
             JOptionPane.showMessageDialog(this, "Please select a row to update");
             return;
         }
+        int modelRow = table.convertRowIndexToModel(selectedRow);
 
         JPanel panel = new JPanel(new GridLayout(columnNames.size(), 2, 5, 5));
         JTextField[] fields = new JTextField[columnNames.size()];
+        // The row as read, the update is only written if the database still holds it
+        Object[] original = new Object[columnNames.size()];
 
         for (int i = 0; i < columnNames.size(); i++) {
+            original[i] = model.getValueAt(modelRow, i);
             panel.add(new JLabel(columnNames.get(i) + ":"));
-            fields[i] = new JTextField(model.getValueAt(selectedRow, i).toString());
+            fields[i] = new JTextField(original[i] == null ? "" : original[i].toString());
             panel.add(fields[i]);
         }
+        fields[0].setEditable(false);
 
         if (JOptionPane.showConfirmDialog(this, panel, "Update Record", 
                 JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
@@ -154,13 +354,21 @@ public class PharmaCRUDApp extends JFrame {
                 values.add(field.getText().trim());
             }
 
-            try {
-                dao.updateRecord((String) tableSelector.getSelectedItem(), columnNames, values);
-                loadSelectedTable();
-                JOptionPane.showMessageDialog(this, "Record updated successfully!");
-            } catch (SQLException e) {
-                showError("Error updating record", e);
-            }
+            String tableName = (String) tableSelector.getSelectedItem();
+            SwingAsync.onEdt(async.updateRecord(tableName, columnNames, original, values), row -> {
+                showChangedRow(tableName, original[0], row);
+                JOptionPane.showMessageDialog(this, savedMessage("updated"));
+            }, e -> {
+                if (e instanceof UpdateConflictException conflict) {
+                    showChangedRow(tableName, original[0], conflict.getCurrent());
+                    JOptionPane.showMessageDialog(this,
+                        conflict.getMessage() + ".\nYour changes were not saved; the grid now shows the current values.",
+                        "Update Conflict",
+                        JOptionPane.WARNING_MESSAGE);
+                } else {
+                    showError("Error updating record", e);
+                }
+            });
         }
     }
 
@@ -170,23 +378,90 @@ public class PharmaCRUDApp extends JFrame {
             JOptionPane.showMessageDialog(this, "Please select a row to delete");
             return;
         }
+        int modelRow = table.convertRowIndexToModel(selectedRow);
 
         if (JOptionPane.showConfirmDialog(this, 
                 "Are you sure you want to delete this record?", 
                 "Confirm Delete", 
                 JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
             
-            try {
-                dao.deleteRecord(
-                    (String) tableSelector.getSelectedItem(),
-                    columnNames.get(0),
-                    model.getValueAt(selectedRow, 0).toString()
-                );
-                loadSelectedTable();
-                JOptionPane.showMessageDialog(this, "Record deleted successfully!");
-            } catch (SQLException e) {
-                showError("Error deleting record", e);
+            String tableName = (String) tableSelector.getSelectedItem();
+            Object key = model.getValueAt(modelRow, 0);
+            CompletableFuture<Void> delete = async.deleteRecord(
+                tableName,
+                columnNames.get(0),
+                key.toString()
+            );
+            SwingAsync.onEdt(delete, _ -> {
+                showChangedRow(tableName, key, null);
+                JOptionPane.showMessageDialog(this, savedMessage("deleted"));
+            }, e -> showError("Error deleting record", e));
+        }
+    }
+
+    private String savedMessage(String action) {
+        return dao.isOffline()
+            ? "Database unreachable: record " + action + " offline.\nIt will be saved once the database is back."
+            : "Record " + action + " successfully!";
+    }
+
+    // Edits are applied to the grid in place; reloading would read the whole table again
+
+    private void showInsertedRow(String tableName, Object[] row) {
+        if (!tableName.equals(baseTable)) {
+            return;
+        }
+        if (baseModel instanceof PagedTableModel paged) {
+            paged.addRow(row);
+        } else if (baseModel instanceof DefaultTableModel loaded) {
+            loaded.addRow(row);
+        }
+        refreshSearchIndex();
+    }
+
+    /** Replaces the row with the key in the grid, or removes it when row is null (deleted). */
+    private void showChangedRow(String tableName, Object key, Object[] row) {
+        if (!tableName.equals(baseTable)) {
+            return;
+        }
+        applyChangedRow(model, key, row);
+        if (baseModel != model) {
+            applyChangedRow(baseModel, key, row);
+        }
+        refreshSearchIndex();
+    }
+
+    private static void applyChangedRow(TableModel target, Object key, Object[] row) {
+        if (target instanceof PagedTableModel paged) {
+            if (row == null) {
+                paged.removeRow(key);
+            } else {
+                paged.updateRow(row);
             }
+            return;
+        }
+        if (!(target instanceof DefaultTableModel loaded)) {
+            return;
+        }
+        for (int i = 0; i < loaded.getRowCount(); i++) {
+            if (key.toString().equals(String.valueOf(loaded.getValueAt(i, 0)))) {
+                if (row == null) {
+                    loaded.removeRow(i);
+                } else {
+                    for (int column = 0; column < row.length; column++) {
+                        loaded.setValueAt(row[column], i, column);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    // The in-memory search index describes the old rows; rebuild it and re-apply the filter
+    private void refreshSearchIndex() {
+        if (searchIndex != null) {
+            searchIndex = null;
+            runSearch();
         }
     }
 
@@ -209,34 +484,219 @@ public class PharmaCRUDApp extends JFrame {
             return;
         }
 
+        int orderId;
         try {
-            int orderId = Integer.parseInt(model.getValueAt(selectedRow, 0).toString());
-            String pdfPath = billGenerator.generateBill(orderId);
-            
-            // Create bills directory if it doesn't exist
-            Files.createDirectories(Paths.get("bills"));
-            
-            // Open the PDF file
-            File pdfFile = new File(pdfPath);
-            if (Desktop.isDesktopSupported()) {
-                Desktop.getDesktop().open(pdfFile);
-            } else {
-                JOptionPane.showMessageDialog(this,
-                    "PDF bill generated at: " + pdfPath,
-                    "Bill Generated",
-                    JOptionPane.INFORMATION_MESSAGE);
-            }
-            
-        } catch (SQLException e) {
-            showError("Error generating bill", e);
+            orderId = Integer.parseInt(model.getValueAt(table.convertRowIndexToModel(selectedRow), 0).toString());
         } catch (NumberFormatException e) {
             showError("Invalid Order ID", e);
-        } catch (IOException e) {
-            showError("Error opening PDF file", e);
+            return;
+        }
+
+        SwingAsync.onEdt(async.generateBill(orderId), pdfPath -> {
+            try {
+                // Open the PDF file
+                File pdfFile = new File(pdfPath);
+                if (Desktop.isDesktopSupported()) {
+                    Desktop.getDesktop().open(pdfFile);
+                } else {
+                    JOptionPane.showMessageDialog(this,
+                        "PDF bill generated at: " + pdfPath,
+                        "Bill Generated",
+                        JOptionPane.INFORMATION_MESSAGE);
+                }
+            } catch (IOException e) {
+                showError("Error opening PDF file", e);
+            }
+        }, e -> showError("Error generating bill", e));
+    }
+
+    private void importCsv() {
+        String selectedTable = (String) tableSelector.getSelectedItem();
+        if (selectedTable == null) {
+            JOptionPane.showMessageDialog(this, "Please select a table first");
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import CSV into " + selectedTable);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File csvFile = chooser.getSelectedFile();
+        File rejectFile = new File(csvFile.getParentFile(), csvFile.getName() + ".rejects.csv");
+
+        CompletableFuture<CsvImporter.Result> load = async.submit(() ->
+            new CsvImporter(dao).importFile(selectedTable, csvFile.toPath(), rejectFile.toPath(),
+                (_, _, _, _) -> { }));
+        SwingAsync.onEdt(load, result -> {
+            loadSelectedTable();
+            String message = String.format("Imported %d of %d rows in %.1f s (%.0f rows/s).",
+                result.inserted(), result.rowsRead(), result.elapsedMillis() / 1000.0, result.rowsPerSecond());
+            if (result.rejected() > 0) {
+                message += "\n" + result.rejected() + " rejected rows were written to " + rejectFile;
+            }
+            JOptionPane.showMessageDialog(this, message, "Import CSV", JOptionPane.INFORMATION_MESSAGE);
+        }, e -> showError("Error importing " + csvFile.getName(), e));
+    }
+
+    private void exportTable() {
+        String selectedTable = (String) tableSelector.getSelectedItem();
+        if (selectedTable == null) {
+            JOptionPane.showMessageDialog(this, "Please select a table first");
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export " + selectedTable + " (.csv or .jsonl, add .gz to compress)");
+        chooser.setSelectedFile(new File(selectedTable + ".csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = chooser.getSelectedFile();
+
+        SwingAsync.onEdt(async.exportTable(selectedTable, target.toPath(),
+                PharmacyDAO.ExportFormat.forFileName(target.getName()), target.getName().endsWith(".gz")),
+            rows -> JOptionPane.showMessageDialog(this, "Exported " + rows + " rows to " + target,
+                "Export", JOptionPane.INFORMATION_MESSAGE),
+            e -> showError("Error exporting " + selectedTable, e));
+    }
+
+    /**
+     * Headless export for scheduled jobs, e.g.
+     * {@code --export orders orders.jsonl.gz}. The format and compression
+     * follow the file extension.
+     */
+    private static void runExport(String tableName, String fileName) throws Exception {
+        try {
+            long start = System.nanoTime();
+            long rows = new PharmacyDAO().exportTable(tableName, Paths.get(fileName),
+                PharmacyDAO.ExportFormat.forFileName(fileName), fileName.endsWith(".gz"));
+            System.out.printf("Exported %d rows from %s to %s in %.1f s%n",
+                rows, tableName, fileName, (System.nanoTime() - start) / 1e9);
+        } finally {
+            DatabaseUtil.closeConnection();
         }
     }
 
-    private void showError(String message, Exception e) {
+    /**
+     * Moves bills written by earlier versions as loose files into the
+     * archive, e.g. {@code --migrate-bills bills --delete}. Bills already
+     * archived are skipped, so an interrupted run can simply be repeated.
+     */
+    private static void runMigrateBills(String dir, boolean deleteOriginals) throws Exception {
+        try (BillArchive archive = BillArchive.getDefault()) {
+            BillArchive.MigrationResult result = archive.migrate(Paths.get(dir), deleteOriginals);
+            System.out.println("Migrated bills from " + dir + ": " + result);
+        }
+    }
+
+    /**
+     * End-of-day bills for a range of orders, by id with
+     * {@code --bills 1 5000} or by order date with
+     * {@code --bills-dates 2024-03-01 2024-03-31}, printing progress as it
+     * goes. Bills of orders unchanged since they were archived are skipped.
+     */
+    private static void runBulkBills(String mode, String from, String to) throws Exception {
+        try (BillArchive archive = BillArchive.getDefault()) {
+            BulkBillGenerator generator = new BulkBillGenerator(new BillGenerator(archive));
+            BulkBillGenerator.ProgressListener progress = (processed, total) -> {
+                // About every 5%; each count is reported once, whichever thread reaches it
+                if (processed == total || processed % Math.max(1, total / 20) == 0) {
+                    System.out.printf("%d/%d bills%n", processed, total);
+                }
+            };
+            long start = System.nanoTime();
+            BulkBillGenerator.Result result = mode.equals("--bills")
+                ? generator.generateBills(Integer.parseInt(from), Integer.parseInt(to), progress)
+                : generator.generateBills(LocalDate.parse(from), LocalDate.parse(to), progress);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int processed = result.generated() + result.skipped() + result.failures().size();
+            System.out.printf("Generated %d, skipped %d unchanged, %d failed in %.1f s (%.0f bills/s)%n",
+                result.generated(), result.skipped(), result.failures().size(), seconds, processed / seconds);
+            for (Map.Entry<Integer, String> failure : result.failures().entrySet()) {
+                System.out.println("Order " + failure.getKey() + ": " + failure.getValue());
+            }
+        } finally {
+            DatabaseUtil.closeConnection();
+        }
+    }
+
+    /** Reclaims the space of replaced bills, e.g. {@code --compact-bills}. */
+    private static void runCompactBills() throws Exception {
+        try (BillArchive archive = BillArchive.getDefault()) {
+            BillArchive.CompactionResult result = archive.compact();
+            System.out.println("Compacted bill archive: " + result);
+        }
+    }
+
+    /**
+     * Headless mode for shared use by several counters, e.g.
+     * {@code --server 8080}; see PharmaServer for the endpoints. Runs until
+     * the process is stopped.
+     */
+    private static void runServer(int port) throws Exception {
+        Metrics.startPeriodicLog();
+        PharmaServer server = PharmaServer.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            DatabaseUtil.closeConnection();
+        }));
+        System.out.println("Serving on " + server.getAddress());
+    }
+
+    /**
+     * Loads what the first clicks would otherwise wait for, on a background
+     * thread once the window is showing: the write journal, which replays
+     * what an earlier run could not save, the metadata of every table, which
+     * also opens the connection pool, and the bill renderer.
+     */
+    private void startWarmUp() {
+        Thread warmUp = new Thread(() -> {
+            try {
+                WriteJournal.getDefault();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                for (String tableName : dao.getTableNames()) {
+                    dao.getTableMetadata(tableName);
+                }
+            } catch (SQLException e) {
+                // Loading the table list reports the same problem to the user
+            }
+            try {
+                BillGenerator.warmUp();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, "startup-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.setPriority(Thread.MIN_PRIORITY);
+        warmUp.start();
+    }
+
+    /**
+     * Loads the classes a session starts with and returns. This is the
+     * training run that records the class-data sharing archive, see the cds
+     * profile in pom.xml; it needs neither a display nor a database, so it
+     * follows main and the constructor up to the frame, which needs a
+     * display, and the first query, which needs the database.
+     */
+    private static void runCdsTraining() throws Exception {
+        UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        DatabaseUtil.loadDriver();
+        BillGenerator.warmUp();
+        PharmacyDAO dao = new PharmacyDAO();
+        try (AsyncPharmacyDAO async = new AsyncPharmacyDAO(dao, new BillGenerator())) {
+            SwingUtilities.invokeAndWait(() -> {
+                Controls controls = Controls.create(new JPanel(new BorderLayout()));
+                new TableChangePoller(async, controls.table(), () -> { }, () -> { }).stop();
+                new Timer(SEARCH_DELAY_MS, _ -> { }).setRepeats(false);
+            });
+        }
+    }
+
+    private void showError(String message, Throwable e) {
         JOptionPane.showMessageDialog(this, 
             message + "\n" + e.getMessage(), 
             "Error", 
@@ -244,16 +704,48 @@ public class PharmaCRUDApp extends JFrame {
         e.printStackTrace();
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("--cds-training")) {
+            runCdsTraining();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--export")) {
+            runExport(args[1], args[2]);
+            return;
+        }
+        if (args.length >= 1 && args.length <= 3 && args[0].equals("--migrate-bills")) {
+            runMigrateBills(args.length >= 2 && !args[1].equals("--delete") ? args[1] : "bills",
+                args[args.length - 1].equals("--delete"));
+            return;
+        }
+        if (args.length == 3 && (args[0].equals("--bills") || args[0].equals("--bills-dates"))) {
+            runBulkBills(args[0], args[1], args[2]);
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--compact-bills")) {
+            runCompactBills();
+            return;
+        }
+        if (args.length >= 1 && args.length <= 2 && args[0].equals("--server")) {
+            runServer(args.length == 2 ? Integer.parseInt(args[1]) : PharmaServer.DEFAULT_PORT);
+            return;
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+        Metrics.startPeriodicLog();
         SwingUtilities.invokeLater(() -> {
             PharmaCRUDApp app = new PharmaCRUDApp();
             app.setVisible(true);
-            Runtime.getRuntime().addShutdownHook(new Thread(DatabaseUtil::closeConnection));
+            if (WARM_UP) {
+                app.startWarmUp();
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                app.async.close();
+                DatabaseUtil.closeConnection();
+            }));
         });
     }
 }
@@ -0,0 +1,157 @@
+package dao;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Non-blocking facade over {@link PharmacyDAO} and {@link BillGenerator}.
+ * Every call runs on its own virtual thread and returns a CompletableFuture,
+ * so any number of operations can be in flight while the UI stays
+ * responsive. Cancelling a returned future interrupts the worker thread.
+ */
+public class AsyncPharmacyDAO implements AutoCloseable {
+    private final PharmacyDAO dao;
+    private final BillGenerator billGenerator;
+    private final OrderCheckout checkout = new OrderCheckout();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<?>> latestByKey = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface SqlTask<T> {
+        T call() throws Exception;
+    }
+
+    public AsyncPharmacyDAO(PharmacyDAO dao, BillGenerator billGenerator) {
+        this.dao = dao;
+        this.billGenerator = billGenerator;
+    }
+
+    public CompletableFuture<Vector<String>> getTableNames() {
+        return submit(dao::getTableNames);
+    }
+
+    public CompletableFuture<DefaultTableModel> getTableData(String tableName) {
+        return submit(() -> dao.getTableData(tableName));
+    }
+
+    public CompletableFuture<DefaultTableModel> searchTable(String tableName, String column, String text) {
+        return submit(() -> dao.searchTable(tableName, column, text));
+    }
+
+    public CompletableFuture<TableMetadata> getTableMetadata(String tableName) {
+        return submit(() -> dao.getTableMetadata(tableName));
+    }
+
+    public CompletableFuture<Integer> getRowCount(String tableName) {
+        return submit(() -> dao.getRowCount(tableName));
+    }
+
+    public CompletableFuture<List<Object[]>> getTablePage(String tableName, String pkColumn, Object fromKey,
+                                                         boolean inclusive, int pageSize) {
+        return submit(() -> dao.getTablePage(tableName, pkColumn, fromKey, inclusive, pageSize));
+    }
+
+    public CompletableFuture<List<Object[]>> getTablePageAt(String tableName, String pkColumn,
+                                                           long rowOffset, int pageSize) {
+        return submit(() -> dao.getTablePageAt(tableName, pkColumn, rowOffset, pageSize));
+    }
+
+    public CompletableFuture<Object> insertRecord(String tableName, Vector<String> columnNames, Vector<String> values) {
+        return submit(() -> dao.insertRecord(tableName, columnNames, values));
+    }
+
+    public CompletableFuture<Object[]> getRow(String tableName, String pkColumn, Object key) {
+        return submit(() -> dao.getRow(tableName, pkColumn, key));
+    }
+
+    public CompletableFuture<Void> updateRecord(String tableName, Vector<String> columnNames, Vector<String> values) {
+        return submit(() -> {
+            dao.updateRecord(tableName, columnNames, values);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Object[]> updateRecord(String tableName, Vector<String> columnNames, Object[] original,
+                                                    Vector<String> values) {
+        return submit(() -> dao.updateRecord(tableName, columnNames, original, values));
+    }
+
+    public CompletableFuture<Void> deleteRecord(String tableName, String primaryKeyColumn, String primaryKeyValue) {
+        return submit(() -> {
+            dao.deleteRecord(tableName, primaryKeyColumn, primaryKeyValue);
+            return null;
+        });
+    }
+
+    public CompletableFuture<BatchResult> insertRecords(String tableName, Vector<String> columnNames,
+                                                        List<Vector<String>> rows) {
+        return submit(() -> dao.insertRecords(tableName, columnNames, rows));
+    }
+
+    public CompletableFuture<BatchResult> updateRecords(String tableName, Vector<String> columnNames,
+                                                        List<Vector<String>> rows) {
+        return submit(() -> dao.updateRecords(tableName, columnNames, rows));
+    }
+
+    public CompletableFuture<Long> exportTable(String tableName, Path target,
+                                               PharmacyDAO.ExportFormat format, boolean gzip) {
+        return submit(() -> dao.exportTable(tableName, target, format, gzip));
+    }
+
+    public CompletableFuture<Integer> checkout(int customerId, List<OrderCheckout.Line> lines) {
+        return submit(() -> checkout.checkout(customerId, lines));
+    }
+
+    public CompletableFuture<String> generateBill(int orderId) {
+        return submit(() -> billGenerator.generateBill(orderId));
+    }
+
+    public CompletableFuture<String> generateBill(int orderId, BillGenerator.Format format) {
+        return submit(() -> billGenerator.generateBill(orderId, format));
+    }
+
+    /**
+     * Runs the task and cancels whatever task was last submitted under the
+     * same key and has not finished yet. Used for loads where only the most
+     * recent request matters, e.g. switching tables quickly.
+     */
+    public <T> CompletableFuture<T> submitLatest(String key, SqlTask<T> task) {
+        CompletableFuture<T> future = submit(task);
+        CompletableFuture<?> previous = latestByKey.put(key, future);
+        if (previous != null) {
+            previous.cancel(true);
+        }
+        future.whenComplete((_, _) -> latestByKey.remove(key, future));
+        return future;
+    }
+
+    public <T> CompletableFuture<T> submit(SqlTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((_, _) -> {
+            if (future.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package dao;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a batch insert or update. Rows are identified by their index in
+ * the list that was passed to the DAO.
+ */
+public class BatchResult {
+    private final int submitted;
+    private int succeeded;
+    private final Map<Integer, String> failures = new TreeMap<>();
+
+    public BatchResult(int submitted) {
+        this.submitted = submitted;
+    }
+
+    void recordSuccess(int count) {
+        succeeded += count;
+    }
+
+    void recordFailure(int rowIndex, String message) {
+        failures.put(rowIndex, message);
+    }
+
+    public int getSubmitted() {
+        return submitted;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failures.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /** Failed row index mapped to the validation or database error for that row. */
+    public Map<Integer, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult[submitted=" + submitted + ", succeeded=" + succeeded + ", failed=" + failures.size() + "]";
+    }
+}
@@ -0,0 +1,621 @@
+package dao;
+
+import dao.BillGenerator.Format;
+import util.Metrics;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Rendered bills kept in a few large segment files instead of one file per
+ * order, so years of bills do not turn into millions of small files.
+ *
+ * Bills are appended to the current segment (64 MB by default) and an
+ * index log records where each (order, format) went; the latest entry for
+ * a bill wins. The index is read into memory when the archive is opened,
+ * and bills are read back through memory-mapped segments. Each bill is
+ * deflated against a preset dictionary per format, taken from the first
+ * bill archived, so the PDF structure, font dictionary and template that
+ * every bill repeats are stored once rather than in each bill.
+ *
+ * Every bill also carries the fingerprint of the data it was rendered
+ * from, so a caller can tell whether it is still current. Puts are not
+ * forced to disk: a bill lost in a crash is rendered again from the
+ * database on the next request. Replaced bills leave dead space behind,
+ * which {@link #compact()} reclaims. {@link #migrate} moves an existing
+ * bills/ directory of loose files into the archive.
+ */
+public final class BillArchive implements Closeable {
+    // Each can be overridden with -Dpharma.archive.<name>=<value>
+    private static final String DEFAULT_DIR = System.getProperty("pharma.archive.dir", "bills/archive");
+    private static final long SEGMENT_BYTES =
+        Math.min(Long.getLong("pharma.archive.segmentMb", 64) << 20, Integer.MAX_VALUE);
+    // A sealed segment with less live data than this share is rewritten by compact()
+    private static final double COMPACT_BELOW =
+        Double.parseDouble(System.getProperty("pharma.archive.compactBelow", "0.5"));
+
+    private static final int RECORD_MAGIC = 0x42494C31; // "BIL1"
+    // magic, order id, format, codec, 2 spare, raw length, stored length, fingerprint, CRC-32 of the payload
+    private static final int HEADER_BYTES = 32;
+    // key, segment, offset, record length, fingerprint
+    private static final int INDEX_ENTRY_BYTES = 32;
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+    private static final Pattern LOOSE_BILL = Pattern.compile("bill_(\\d+)\\.(pdf|html)");
+
+    private static final Metrics.Timer PUT_TIMER = Metrics.timer("archive.put");
+    private static final Metrics.Timer GET_TIMER = Metrics.timer("archive.get");
+    private static final Metrics.Timer COMPACT_TIMER = Metrics.timer("archive.compact");
+
+    private static BillArchive defaultArchive;
+
+    public record Stats(int bills, int segments, long liveBytes, long diskBytes) {
+    }
+
+    public record CompactionResult(int segmentsRewritten, long bytesReclaimed) {
+    }
+
+    public record MigrationResult(int migrated, int skipped, Map<String, String> failures) {
+    }
+
+    private record Location(int segment, long offset, int length, long fingerprint) {
+    }
+
+    private final Path dir;
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<byte[]> dictionaries = new AtomicReferenceArray<>(Format.values().length);
+
+    // Guarded by this: everything that writes
+    private final Map<Integer, Long> liveBytes = new HashMap<>();
+    private FileChannel indexLog;
+    private long indexEntries;
+    private Segment active;
+
+    private BillArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    /** The archive under bills/archive (-Dpharma.archive.dir), opened on first use. */
+    public static synchronized BillArchive getDefault() throws IOException {
+        if (defaultArchive == null) {
+            defaultArchive = open(Paths.get(DEFAULT_DIR));
+        }
+        return defaultArchive;
+    }
+
+    /**
+     * Opens or creates the archive in the directory. Index entries that
+     * point past the end of their segment, and bytes written to the last
+     * segment but never indexed, are what an interrupted put leaves behind;
+     * both are dropped.
+     */
+    public static BillArchive open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        BillArchive archive = new BillArchive(dir);
+        archive.load();
+        return archive;
+    }
+
+    private synchronized void load() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.dat")) {
+            for (Path file : files) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (name.matches()) {
+                    int id = Integer.parseInt(name.group(1));
+                    segments.put(id, new Segment(id, file));
+                }
+            }
+        }
+
+        Path indexFile = dir.resolve("index.dat");
+        indexLog = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long complete = indexLog.size() / INDEX_ENTRY_BYTES * INDEX_ENTRY_BYTES;
+        Map<Integer, Long> indexedEnd = new HashMap<>();
+        ByteBuffer entries = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 4096);
+        for (long position = 0; position < complete; ) {
+            entries.clear().limit((int) Math.min(entries.capacity(), complete - position));
+            while (entries.hasRemaining()) {
+                if (indexLog.read(entries, position + entries.position()) < 0) {
+                    throw new IOException("Index ended early: " + indexFile);
+                }
+            }
+            position += entries.flip().remaining();
+            while (entries.hasRemaining()) {
+                long key = entries.getLong();
+                Location location = new Location(entries.getInt(), entries.getLong(), entries.getInt(), entries.getLong());
+                Segment segment = segments.get(location.segment());
+                if (segment != null && location.offset() + location.length() <= segment.size) {
+                    index.put(key, location);
+                    indexedEnd.merge(location.segment(), location.offset() + location.length(), Math::max);
+                }
+            }
+        }
+        indexLog.truncate(complete);
+        indexLog.position(complete);
+        indexEntries = complete / INDEX_ENTRY_BYTES;
+
+        for (Location location : index.values()) {
+            liveBytes.merge(location.segment(), (long) location.length(), Long::sum);
+        }
+        int last = segments.keySet().stream().max(Integer::compare).orElse(0);
+        if (last == 0) {
+            active = newSegment(1);
+        } else {
+            active = segments.get(last);
+            active.truncate(indexedEnd.getOrDefault(last, 0L));
+        }
+    }
+
+    /** Stores the bill, replacing any earlier one for the same order and format. */
+    public void put(int orderId, Format format, long fingerprint, byte[] content) throws IOException {
+        try (Metrics.Sample sample = PUT_TIMER.time()) {
+            ByteBuffer record = encode(orderId, format, fingerprint, content);
+            synchronized (this) {
+                append(key(orderId, format), record, fingerprint);
+            }
+            sample.success();
+        }
+    }
+
+    /** The archived bill, or null when there is none. */
+    public byte[] get(int orderId, Format format) throws IOException {
+        return read(orderId, format, 0, false);
+    }
+
+    /**
+     * The archived bill if it was rendered from data with this fingerprint,
+     * else null: the caller renders it again. A damaged record also counts
+     * as missing and is dropped from the index.
+     */
+    public byte[] get(int orderId, Format format, long fingerprint) throws IOException {
+        return read(orderId, format, fingerprint, true);
+    }
+
+    public boolean contains(int orderId, Format format, long fingerprint) {
+        Location location = index.get(key(orderId, format));
+        return location != null && location.fingerprint() == fingerprint;
+    }
+
+    private byte[] read(int orderId, Format format, long fingerprint, boolean checkFingerprint) throws IOException {
+        try (Metrics.Sample sample = GET_TIMER.time()) {
+            long key = key(orderId, format);
+            // A concurrent compaction may move the bill and drop its segment; the index then has the new place
+            for (int attempt = 0; attempt < 3; attempt++) {
+                Location location = index.get(key);
+                if (location == null || (checkFingerprint && location.fingerprint() != fingerprint)) {
+                    sample.success();
+                    return null;
+                }
+                Segment segment = segments.get(location.segment());
+                if (segment == null) {
+                    continue;
+                }
+                ByteBuffer record;
+                try {
+                    record = segment.slice(location.offset(), location.length());
+                } catch (IOException e) {
+                    if (segments.containsKey(location.segment())) {
+                        throw e;
+                    }
+                    continue;
+                }
+                byte[] content;
+                try {
+                    content = decode(record, orderId, format);
+                } catch (IOException | RuntimeException e) {
+                    if (!checkFingerprint) {
+                        throw e instanceof IOException io ? io
+                            : new IOException("Archived bill " + orderId + " is corrupt", e);
+                    }
+                    // Puts are not forced to disk, so a power cut can leave a torn record behind.
+                    // Forget it and let the caller render the bill again, which stores a good copy
+                    drop(key, location);
+                    sample.success();
+                    return null;
+                }
+                sample.success();
+                return content;
+            }
+            throw new IOException("Bill " + orderId + " kept moving while being read");
+        }
+    }
+
+    private synchronized void drop(long key, Location location) {
+        if (index.remove(key, location)) {
+            liveBytes.merge(location.segment(), (long) -location.length(), Long::sum);
+        }
+    }
+
+    /**
+     * Rewrites the sealed segments that are mostly dead space. Their live
+     * bills are copied to the current segment as they are, the index is
+     * updated and the old segment deleted. The index log itself is
+     * rewritten once most of its entries are stale.
+     */
+    public synchronized CompactionResult compact() throws IOException {
+        try (Metrics.Sample sample = COMPACT_TIMER.time()) {
+            Map<Integer, List<Map.Entry<Long, Location>>> bySegment = new HashMap<>();
+            for (Map.Entry<Long, Location> entry : index.entrySet()) {
+                bySegment.computeIfAbsent(entry.getValue().segment(), _ -> new ArrayList<>()).add(entry);
+            }
+
+            int rewritten = 0;
+            long reclaimed = 0;
+            // A copy can roll the current segment over, so every segment written to since the last force
+            Set<Segment> written = new LinkedHashSet<>();
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                long live = liveBytes.getOrDefault(segment.id, 0L);
+                if (segment == active || live >= segment.size * COMPACT_BELOW) {
+                    continue;
+                }
+                List<Map.Entry<Long, Location>> entries = bySegment.getOrDefault(segment.id, new ArrayList<>());
+                entries.sort((a, b) -> Long.compare(a.getValue().offset(), b.getValue().offset()));
+                for (Map.Entry<Long, Location> entry : entries) {
+                    Location location = entry.getValue();
+                    ByteBuffer record = segment.slice(location.offset(), location.length());
+                    append(entry.getKey(), record, location.fingerprint());
+                    written.add(active);
+                }
+                // The copies must be on disk before the only other copy goes
+                for (Segment copy : written) {
+                    copy.channel.force(false);
+                }
+                written.clear();
+                indexLog.force(false);
+                segments.remove(segment.id);
+                liveBytes.remove(segment.id);
+                segment.close();
+                Files.deleteIfExists(segment.path);
+                rewritten++;
+                reclaimed += segment.size - live;
+            }
+
+            if (indexEntries > 2L * index.size() + 1024) {
+                rewriteIndex();
+            }
+            sample.success();
+            return new CompactionResult(rewritten, reclaimed);
+        }
+    }
+
+    /**
+     * Moves bill_<id>.pdf and bill_<id>.html files from the directory into
+     * the archive. Fingerprints from the bulk generator's old manifest are
+     * kept, so those bills are not rendered again. With deleteOriginals, a
+     * file is deleted once its archived copy reads back identical, and the
+     * manifest goes too. Bills already in the archive are skipped, so an
+     * interrupted migration can simply be run again.
+     */
+    public MigrationResult migrate(Path billsDir, boolean deleteOriginals) throws IOException {
+        Properties manifest = new Properties();
+        Path manifestFile = billsDir.resolve("manifest.properties");
+        if (Files.exists(manifestFile)) {
+            try (InputStream in = Files.newInputStream(manifestFile)) {
+                manifest.load(in);
+            }
+        }
+
+        int migrated = 0;
+        int skipped = 0;
+        Map<String, String> failures = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(billsDir, "bill_*")) {
+            for (Path file : files) {
+                Matcher name = LOOSE_BILL.matcher(file.getFileName().toString());
+                if (!name.matches()) {
+                    continue;
+                }
+                int orderId = Integer.parseInt(name.group(1));
+                Format format = name.group(2).equals("html") ? Format.HTML : Format.PDF;
+                try {
+                    byte[] content = Files.readAllBytes(file);
+                    if (Arrays.equals(get(orderId, format), content)) {
+                        skipped++;
+                    } else {
+                        String hex = format == Format.PDF ? manifest.getProperty(name.group(1)) : null;
+                        long fingerprint = hex != null && hex.length() >= 16
+                            ? Long.parseUnsignedLong(hex.substring(0, 16), 16) : 0;
+                        put(orderId, format, fingerprint, content);
+                        if (!Arrays.equals(get(orderId, format), content)) {
+                            throw new IOException("Archived copy differs from the file");
+                        }
+                        migrated++;
+                    }
+                    if (deleteOriginals) {
+                        Files.delete(file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures.put(file.getFileName().toString(), e.getMessage());
+                }
+            }
+        }
+        synchronized (this) {
+            active.channel.force(false);
+            indexLog.force(false);
+        }
+        if (deleteOriginals && failures.isEmpty()) {
+            Files.deleteIfExists(manifestFile);
+        }
+        return new MigrationResult(migrated, skipped, failures);
+    }
+
+    public synchronized Stats getStats() {
+        long live = 0;
+        long disk = 0;
+        for (Segment segment : segments.values()) {
+            live += liveBytes.getOrDefault(segment.id, 0L);
+            disk += segment.size;
+        }
+        return new Stats(index.size(), segments.size(), live, disk);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        indexLog.close();
+        synchronized (BillArchive.class) {
+            if (defaultArchive == this) {
+                defaultArchive = null;
+            }
+        }
+    }
+
+    // Called with the lock held. Writes the record to the current segment, then indexes it
+    private void append(long key, ByteBuffer record, long fingerprint) throws IOException {
+        int length = record.remaining();
+        if (active.size > 0 && active.size + length > SEGMENT_BYTES) {
+            active = newSegment(active.id + 1);
+        }
+        long offset = active.size;
+        for (long position = offset; record.hasRemaining(); ) {
+            position += active.channel.write(record, position);
+        }
+        active.size += length;
+
+        Location location = new Location(active.id, offset, length, fingerprint);
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        writeEntry(entry, key, location);
+        entry.flip();
+        while (entry.hasRemaining()) {
+            indexLog.write(entry);
+        }
+        indexEntries++;
+
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            liveBytes.merge(previous.segment(), (long) -previous.length(), Long::sum);
+        }
+        liveBytes.merge(location.segment(), (long) length, Long::sum);
+    }
+
+    private void rewriteIndex() throws IOException {
+        Path indexFile = dir.resolve("index.dat");
+        Path tmp = dir.resolve("index.dat.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer entries = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 4096);
+            for (Map.Entry<Long, Location> entry : index.entrySet()) {
+                if (!entries.hasRemaining()) {
+                    flush(out, entries);
+                }
+                writeEntry(entries, entry.getKey(), entry.getValue());
+            }
+            flush(out, entries);
+            out.force(false);
+        }
+        indexLog.close();
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexLog = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexLog.position(indexLog.size());
+        indexEntries = index.size();
+    }
+
+    private static void flush(FileChannel out, ByteBuffer entries) throws IOException {
+        entries.flip();
+        while (entries.hasRemaining()) {
+            out.write(entries);
+        }
+        entries.clear();
+    }
+
+    private static void writeEntry(ByteBuffer buffer, long key, Location location) {
+        buffer.putLong(key).putInt(location.segment()).putLong(location.offset())
+            .putInt(location.length()).putLong(location.fingerprint());
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = new Segment(id, dir.resolve(String.format("segment-%06d.dat", id)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private ByteBuffer encode(int orderId, Format format, long fingerprint, byte[] content) throws IOException {
+        byte[] dictionary = dictionary(format, content);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] stored;
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[content.length + 64];
+            int length = 0;
+            while (!deflater.finished() && length < content.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            stored = deflater.finished() && length < content.length ? Arrays.copyOf(buffer, length) : null;
+        } finally {
+            deflater.end();
+        }
+
+        byte codec = stored != null ? DEFLATED : STORED;
+        if (stored == null) {
+            stored = content;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + stored.length);
+        record.putInt(RECORD_MAGIC).putInt(orderId).put((byte) format.ordinal()).put(codec).putShort((short) 0)
+            .putInt(content.length).putInt(stored.length).putLong(fingerprint).putInt((int) crc.getValue())
+            .put(stored);
+        return record.flip();
+    }
+
+    private byte[] decode(ByteBuffer record, int orderId, Format format) throws IOException {
+        if (record.getInt() != RECORD_MAGIC || record.getInt() != orderId || record.get() != format.ordinal()) {
+            throw new IOException("Archive record for bill " + orderId + " is not where the index says");
+        }
+        byte codec = record.get();
+        record.getShort();
+        int rawLength = record.getInt();
+        byte[] stored = new byte[record.getInt()];
+        record.getLong();
+        int checksum = record.getInt();
+        record.get(stored);
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Archived bill " + orderId + " is corrupt");
+        }
+        if (codec == STORED) {
+            return stored;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] content = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int n = inflater.inflate(content, length, rawLength - length);
+                if (n == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary(format, null));
+                } else if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Archived bill " + orderId + " is truncated");
+                }
+                length += n;
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Archived bill " + orderId + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The preset dictionary for the format. The first bill stored in that
+     * format becomes it; it is written before any bill that uses it and
+     * never changes afterwards, or older bills could not be read.
+     */
+    private byte[] dictionary(Format format, byte[] firstContent) throws IOException {
+        byte[] dictionary = dictionaries.get(format.ordinal());
+        return dictionary != null ? dictionary : loadDictionary(format, firstContent);
+    }
+
+    private synchronized byte[] loadDictionary(Format format, byte[] firstContent) throws IOException {
+        byte[] dictionary = dictionaries.get(format.ordinal());
+        if (dictionary != null) {
+            return dictionary;
+        }
+        Path file = dir.resolve("dictionary-" + format.name().toLowerCase() + ".bin");
+        if (Files.exists(file)) {
+            dictionary = Files.readAllBytes(file);
+        } else if (firstContent != null) {
+            dictionary = Arrays.copyOf(firstContent, Math.min(firstContent.length, DICTIONARY_BYTES));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(dictionary);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            throw new IOException("Missing archive dictionary " + file);
+        }
+        dictionaries.set(format.ordinal(), dictionary);
+        return dictionary;
+    }
+
+    private static long key(int orderId, Format format) {
+        return ((long) orderId << 8) | format.ordinal();
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        // Written under the archive's lock; readers only look at bytes an index entry already covers
+        volatile long size;
+        private volatile MappedByteBuffer map;
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        // The current segment keeps growing, so it is mapped again once a read goes past the mapping
+        ByteBuffer slice(long offset, int length) throws IOException {
+            MappedByteBuffer mapped = map;
+            if (mapped == null || mapped.capacity() < offset + length) {
+                synchronized (this) {
+                    mapped = map;
+                    if (mapped == null || mapped.capacity() < offset + length) {
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                        map = mapped;
+                    }
+                }
+            }
+            return mapped.slice((int) offset, length);
+        }
+
+        void truncate(long end) throws IOException {
+            if (size > end) {
+                channel.truncate(end);
+                size = end;
+                map = null;
+            }
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything printed on a bill: the order header and its line items.
+ */
+public class BillData {
+    private final int orderId;
+    private final String customerName;
+    private final String customerPhone;
+    private final List<Item> items;
+
+    public BillData(int orderId, String customerName, String customerPhone, List<Item> items) {
+        this.orderId = orderId;
+        this.customerName = customerName;
+        this.customerPhone = customerPhone;
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public String getCustomerPhone() {
+        return customerPhone;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public record Item(String productName, int quantity, BigDecimal subtotal) {
+    }
+}
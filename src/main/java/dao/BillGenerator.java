@@ -1,120 +1,378 @@
 package dao;
 
 import util.DatabaseUtil;
+import util.Metrics;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
+import com.itextpdf.layout.Style;
 import com.itextpdf.layout.element.Table;
 import com.itextpdf.layout.element.Cell;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class BillGenerator {
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+    // Immutable, so one instance serves every rendering thread
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+
+    public enum Format { PDF, HTML }
+
+    // Initialized by the first PDF rather than with this class, so creating a generator does not load iText
+    private static final class Pdf {
+        // Parsed once and shared by every bill; a PdfFont itself is bound to one document
+        static final FontProgram BODY_FONT = loadFont(StandardFonts.HELVETICA);
+
+        // Layout styles shared across documents, never modified after class init
+        static final Style TITLE = new Style().setTextAlignment(TextAlignment.CENTER).setFontSize(20);
+        static final Style RIGHT = new Style().setTextAlignment(TextAlignment.RIGHT);
+        static final Style TOTAL = new Style().setTextAlignment(TextAlignment.RIGHT).setBold();
+        static final Style FOOTER = new Style().setTextAlignment(TextAlignment.CENTER).setItalic();
+        static final float[] COLUMN_WIDTHS = {50, 25, 25};
+    }
+
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("bill.load");
+    private static final Metrics.Timer RENDER_PDF_TIMER = Metrics.timer("bill.renderPdf");
+    private static final Metrics.Timer RENDER_HTML_TIMER = Metrics.timer("bill.renderHtml");
+    private static final Metrics.Timer WRITE_TIMER = Metrics.timer("bill.write");
+
+    static final String ORDER_QUERY = "SELECT o.Order_ID, c.Name as CustomerName, " +
+                                      "c.Phone as CustomerPhone " +
+                                      "FROM orders o " +
+                                      "JOIN customer c ON o.Customer_ID = c.Customer_ID ";
+
+    private static final String ORDER_BY_ID = ORDER_QUERY + "WHERE o.Order_ID = ?";
+    private static final Set<String> HEADER_TABLES = Set.of("orders", "customer");
+
+    // Product names come from ProductCatalog rather than a join on every bill
+    static final String ITEMS_QUERY = "SELECT od.Order_ID, od.Product_ID, od.Quantity, " +
+                                      "od.PriceAtPurchase, od.Subtotal " +
+                                      "FROM orderdetails od ";
+
+    private final BillArchive archive;
+
+    /** Bills are kept in the default archive, see {@link BillArchive#getDefault()}. */
+    public BillGenerator() {
+        this(null);
+    }
+
+    public BillGenerator(BillArchive archive) {
+        this.archive = archive;
+    }
+
+    BillArchive archive() throws IOException {
+        return archive != null ? archive : BillArchive.getDefault();
+    }
 
     public String generateBill(int orderId) throws SQLException, IOException {
-    String pdfPath = "bills/bill_" + orderId + ".pdf";
-
-    // Ensure 'bills' directory exists
-    java.io.File dir = new java.io.File("bills");
-    if (!dir.exists()) {
-        dir.mkdirs();
-    }
-
-    try (PdfWriter writer = new PdfWriter(pdfPath);
-         PdfDocument pdf = new PdfDocument(writer);
-         Document document = new Document(pdf);
-         Connection conn = DatabaseUtil.getConnection()) {
-
-        // Add header
-        document.add(new Paragraph("PharmaDB Bill")
-            .setTextAlignment(TextAlignment.CENTER)
-            .setFontSize(20));
-
-        document.add(new Paragraph("Date: " + DATE_FORMAT.format(new Date()))
-            .setTextAlignment(TextAlignment.RIGHT));
-
-        // Get order details
-        String orderQuery = "SELECT o.Order_ID, c.Name as CustomerName, " +
-                            "c.Phone as CustomerPhone " +
-                            "FROM orders o " +
-                            "JOIN customer c ON o.Customer_ID = c.Customer_ID " +
-                            "WHERE o.Order_ID = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(orderQuery)) {
-            pstmt.setInt(1, orderId);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                String customerName = rs.getString("CustomerName");
-                String phone = rs.getString("CustomerPhone");
-
-                // Add customer details
-                document.add(new Paragraph("Customer Name: " + customerName));
-                document.add(new Paragraph("Contact: " + phone));
-                document.add(new Paragraph("Order ID: " + orderId));
-                document.add(new Paragraph("\n"));
-
-                // Create table for order items
-                Table table = new Table(UnitValue.createPercentArray(new float[]{50, 25, 25}));
-                table.setWidth(UnitValue.createPercentValue(100));
-
-                // Add table headers
-                table.addHeaderCell(new Cell().add(new Paragraph("Product")));
-                table.addHeaderCell(new Cell().add(new Paragraph("Quantity")));
-                table.addHeaderCell(new Cell().add(new Paragraph("Subtotal")));
-
-                // Get order items
-                String itemsQuery = "SELECT p.Name as ProductName, od.Quantity, " +
-                                    "od.PriceAtPurchase, od.Subtotal " +
-                                    "FROM orderdetails od " +
-                                    "JOIN product p ON od.Product_ID = p.Product_ID " +
-                                    "WHERE od.Order_ID = ?";
-
-                double total = 0.0;
-                try (PreparedStatement itemsStmt = conn.prepareStatement(itemsQuery)) {
-                    itemsStmt.setInt(1, orderId);
-                    ResultSet itemsRs = itemsStmt.executeQuery();
-
-                    while (itemsRs.next()) {
-                        String productName = itemsRs.getString("ProductName");
-                        int quantity = itemsRs.getInt("Quantity");
-                        double subtotal = itemsRs.getDouble("Subtotal");
-                        total += subtotal;
-
-                        // Add table row
-                        table.addCell(new Cell().add(new Paragraph(productName)));
-                        table.addCell(new Cell().add(new Paragraph(String.valueOf(quantity))));
-                        table.addCell(new Cell().add(new Paragraph(String.format("%.2f", subtotal))));
-                    }
+        return generateBill(orderId, Format.PDF);
+    }
+
+    /**
+     * Returns a temporary file holding the bill, for handing to a viewer.
+     * The bill itself lives in the archive; the file is removed on exit.
+     */
+    public String generateBill(int orderId, Format format) throws SQLException, IOException {
+        byte[] content = getBill(orderId, format);
+        Path file = Files.createTempFile("bill_" + orderId + "_", format == Format.HTML ? ".html" : ".pdf");
+        file.toFile().deleteOnExit();
+        write(content, file);
+        return file.toString();
+    }
+
+    /**
+     * The bill from the archive, rendered and archived first when there is
+     * none yet or the order has changed since it was rendered.
+     */
+    public byte[] getBill(int orderId, Format format) throws SQLException, IOException {
+        return getBill(loadBill(orderId), format);
+    }
+
+    public byte[] getBill(BillData bill, Format format) throws IOException {
+        long fingerprint = fingerprint(bill);
+        byte[] archived = archive().get(bill.getOrderId(), format, fingerprint);
+        if (archived != null) {
+            return archived;
+        }
+        byte[] content = format == Format.HTML ? toHtml(bill).getBytes(StandardCharsets.UTF_8) : renderPdf(bill);
+        archive().put(bill.getOrderId(), format, fingerprint, content);
+        return content;
+    }
+
+    // Hash of everything printed on the bill, the print date aside
+    static long fingerprint(BillData bill) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder data = new StringBuilder()
+                .append(bill.getCustomerName()).append('\u0000')
+                .append(bill.getCustomerPhone()).append('\u0000');
+            for (BillData.Item item : bill.getItems()) {
+                data.append(item.productName()).append('\u0000')
+                    .append(item.quantity()).append('\u0000')
+                    .append(formatMoney(item.subtotal())).append('\u0000');
+            }
+            byte[] hash = digest.digest(data.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the order and its line items. An unknown order fails with
+     * SQLState 02000 (no data).
+     */
+    public BillData loadBill(int orderId) throws SQLException {
+        try (Metrics.Sample sample = LOAD_TIMER.time();
+             Connection conn = DatabaseUtil.getReadConnection()) {
+            BillData bill = loadBill(conn, orderId);
+            sample.success();
+            return bill;
+        }
+    }
+
+    private BillData loadBill(Connection conn, int orderId) throws SQLException {
+        // Get order details; the header repeats for every copy of a bill, so it is cached
+        QueryCache.Result header = QueryCache.get(ORDER_BY_ID, List.of(orderId), HEADER_TABLES, () -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(ORDER_BY_ID)) {
+                pstmt.setInt(1, orderId);
+                try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, ORDER_BY_ID)) {
+                    return QueryCache.Result.read(rs);
                 }
+            }
+        });
+        if (header.getRowCount() == 0) {
+            throw new SQLException("Order not found: " + orderId, "02000");
+        }
+        String customerName = Objects.toString(header.getValue(0, 1), null);
+        String phone = Objects.toString(header.getValue(0, 2), null);
 
-                // Add table to document
-                document.add(table);
+        // Get order items
+        List<BillData.Item> items;
+        try (PreparedStatement itemsStmt = conn.prepareStatement(ITEMS_QUERY + "WHERE od.Order_ID = ?")) {
+            itemsStmt.setInt(1, orderId);
+            try (ResultSet itemsRs = itemsStmt.executeQuery()) {
+                items = readItems(conn, itemsRs, Set.of(orderId)).getOrDefault(orderId, List.of());
+            }
+        }
+        return new BillData(orderId, customerName, phone, items);
+    }
 
-                // Add total
-                document.add(new Paragraph("\n"));
-                document.add(new Paragraph("Total Amount: $" + String.format("%.2f", total))
-                    .setTextAlignment(TextAlignment.RIGHT)
-                    .setBold());
+    private record ItemRow(int orderId, int productId, int quantity, BigDecimal subtotal) {
+    }
 
-                // Add footer
-                document.add(new Paragraph("\n\nThank you for your business!")
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setItalic());
+    /**
+     * Reads ITEMS_QUERY rows of the given orders, grouped by order, with
+     * product names looked up in one batch from ProductCatalog. Items of a
+     * product that no longer exists are left out, as the old join did.
+     */
+    static Map<Integer, List<BillData.Item>> readItems(Connection conn, ResultSet itemsRs, Set<Integer> orderIds) throws SQLException {
+        List<ItemRow> rows = new ArrayList<>();
+        Set<Integer> productIds = new HashSet<>();
+        while (itemsRs.next()) {
+            int orderId = itemsRs.getInt("Order_ID");
+            if (orderIds.contains(orderId)) {
+                int quantity = itemsRs.getInt("Quantity");
+                ItemRow row = new ItemRow(orderId, itemsRs.getInt("Product_ID"), quantity,
+                    subtotal(itemsRs.getBigDecimal("Subtotal"), itemsRs.getBigDecimal("PriceAtPurchase"), quantity));
+                rows.add(row);
+                productIds.add(row.productId());
+            }
+        }
 
-            } else {
-                throw new SQLException("Order not found: " + orderId);
+        Map<Integer, ProductCatalog.Product> products = ProductCatalog.getAll(conn, productIds);
+        Map<Integer, List<BillData.Item>> items = new TreeMap<>();
+        for (ItemRow row : rows) {
+            ProductCatalog.Product product = products.get(row.productId());
+            if (product != null) {
+                items.computeIfAbsent(row.orderId(), _ -> new ArrayList<>())
+                    .add(new BillData.Item(product.name(), row.quantity(), row.subtotal()));
             }
         }
+        return items;
     }
 
-    return pdfPath;
-}
+    // A line without a stored subtotal counts as price times quantity, as in SalesAnalytics, or 0 without a price
+    private static BigDecimal subtotal(BigDecimal subtotal, BigDecimal price, int quantity) {
+        if (subtotal != null) {
+            return subtotal;
+        }
+        return price != null ? price.multiply(BigDecimal.valueOf(quantity)) : BigDecimal.ZERO;
+    }
 
-} 
\ No newline at end of file
+    /**
+     * Writes the bill as a PDF. Safe to call from several threads at once,
+     * each call builds its own document.
+     */
+    public void renderBill(BillData bill, String pdfPath) throws IOException {
+        write(renderPdf(bill), pdfPath);
+    }
+
+    /** Lays out the bill as a PDF in memory. */
+    public byte[] renderPdf(BillData bill) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192 + bill.getItems().size() * 64);
+        try (Metrics.Sample sample = RENDER_PDF_TIMER.time()) {
+            layoutPdf(bill, out);
+            sample.success();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Lays out a sample bill as PDF and HTML and throws both away, so the
+     * first real bill does not wait for iText, the font and the template
+     * to load. Nothing is recorded in the bill timers. Meant for a
+     * background thread at startup.
+     */
+    public static void warmUp() throws IOException {
+        BillData sample = new BillData(0, "Sample", "0000000000",
+            List.of(new BillData.Item("Sample", 1, BigDecimal.ONE)));
+        BillGenerator generator = new BillGenerator();
+        generator.layoutPdf(sample, new ByteArrayOutputStream(8192));
+        generator.toHtml(sample);
+    }
+
+    private static void write(byte[] content, String path) throws IOException {
+        write(content, Paths.get(path));
+    }
+
+    private static void write(byte[] content, Path path) throws IOException {
+        try (Metrics.Sample sample = WRITE_TIMER.time()) {
+            Files.write(path, content);
+            sample.success();
+        }
+    }
+
+    private void layoutPdf(BillData bill, ByteArrayOutputStream out) throws IOException {
+        try (PdfWriter writer = new PdfWriter(out);
+             PdfDocument pdf = new PdfDocument(writer);
+             Document document = new Document(pdf)) {
+
+            document.setFont(PdfFontFactory.createFont(Pdf.BODY_FONT, PdfEncodings.WINANSI));
+
+            // Add header
+            document.add(new Paragraph("PharmaDB Bill").addStyle(Pdf.TITLE));
+
+            document.add(new Paragraph("Date: " + DATE_FORMAT.format(LocalDateTime.now())).addStyle(Pdf.RIGHT));
+
+            // Add customer details
+            document.add(new Paragraph("Customer Name: " + bill.getCustomerName()));
+            document.add(new Paragraph("Contact: " + bill.getCustomerPhone()));
+            document.add(new Paragraph("Order ID: " + bill.getOrderId()));
+            document.add(new Paragraph("\n"));
+
+            // Create table for order items
+            Table table = new Table(UnitValue.createPercentArray(Pdf.COLUMN_WIDTHS));
+            table.setWidth(UnitValue.createPercentValue(100));
+
+            // Add table headers
+            table.addHeaderCell(new Cell().add(new Paragraph("Product")));
+            table.addHeaderCell(new Cell().add(new Paragraph("Quantity")));
+            table.addHeaderCell(new Cell().add(new Paragraph("Subtotal")));
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (BillData.Item item : bill.getItems()) {
+                total = total.add(item.subtotal());
+
+                // Add table row
+                table.addCell(new Cell().add(new Paragraph(item.productName())));
+                table.addCell(new Cell().add(new Paragraph(String.valueOf(item.quantity()))));
+                table.addCell(new Cell().add(new Paragraph(formatMoney(item.subtotal()))));
+            }
+
+            // Add table to document
+            document.add(table);
+
+            // Add total
+            document.add(new Paragraph("\n"));
+            document.add(new Paragraph("Total Amount: $" + formatMoney(total)).addStyle(Pdf.TOTAL));
+
+            // Add footer
+            document.add(new Paragraph("\n\nThank you for your business!").addStyle(Pdf.FOOTER));
+        }
+    }
+
+    /** Writes the bill as HTML using the compiled bill template. */
+    public void renderHtml(BillData bill, String htmlPath) throws IOException {
+        String html;
+        try (Metrics.Sample sample = RENDER_HTML_TIMER.time()) {
+            html = toHtml(bill);
+            sample.success();
+        }
+        write(html.getBytes(StandardCharsets.UTF_8), htmlPath);
+    }
+
+    public String toHtml(BillData bill) throws IOException {
+        BillTemplate template = BillTemplate.getDefault();
+
+        StringBuilder rows = new StringBuilder(bill.getItems().size() * 96);
+        BigDecimal total = BigDecimal.ZERO;
+        for (BillData.Item item : bill.getItems()) {
+            total = total.add(item.subtotal());
+            rows.append("<tr><td>");
+            BillTemplate.escapeHtml(item.productName(), rows);
+            rows.append("</td><td>").append(item.quantity());
+            rows.append("</td><td>").append(formatMoney(item.subtotal()));
+            rows.append("</td></tr>\n");
+        }
+
+        StringBuilder customerName = new StringBuilder();
+        BillTemplate.escapeHtml(bill.getCustomerName(), customerName);
+        StringBuilder contact = new StringBuilder();
+        BillTemplate.escapeHtml(bill.getCustomerPhone(), contact);
+
+        Map<String, String> values = new HashMap<>(8);
+        values.put("customerName", customerName.toString());
+        values.put("contact", contact.toString());
+        values.put("rows", rows.toString());
+        values.put("total", formatMoney(total));
+
+        StringBuilder html = new StringBuilder(template.getLiteralLength() + rows.length() + 128);
+        template.render(values, html);
+        return html.toString();
+    }
+
+    private static FontProgram loadFont(String name) {
+        try {
+            return FontProgramFactory.createFont(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load font " + name, e);
+        }
+    }
+
+    /**
+     * Two decimal places, rounded half-up. Replaces String.format("%.2f"),
+     * which parses the pattern and builds a Formatter on every call.
+     */
+    public static String formatMoney(BigDecimal amount) {
+        return amount == null ? "0.00" : amount.setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -0,0 +1,119 @@
+package dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTML bill template, parsed once into literal text and ${name}
+ * placeholders. Rendering only appends the prepared pieces, so there is no
+ * per-bill scanning or regex replacement of the template.
+ */
+public class BillTemplate {
+    private static final String RESOURCE = "/resources/bill_template.html";
+    private static final Path SOURCE_FILE = Paths.get("src", "main", "java", "resources", "bill_template.html");
+
+    private static volatile BillTemplate defaultTemplate;
+
+    // Literal at index i is followed by placeholder i; there is one more literal than placeholders
+    private final String[] literals;
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private BillTemplate(String[] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static BillTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int start = text.indexOf("${", pos);
+            int end = start < 0 ? -1 : text.indexOf('}', start + 2);
+            if (end < 0) {
+                literals.add(text.substring(pos));
+                break;
+            }
+            literals.add(text.substring(pos, start));
+            placeholders.add(text.substring(start + 2, end));
+            pos = end + 1;
+        }
+        return new BillTemplate(literals.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    /** The bundled bill_template.html, compiled on first use. */
+    public static BillTemplate getDefault() throws IOException {
+        BillTemplate template = defaultTemplate;
+        if (template == null) {
+            synchronized (BillTemplate.class) {
+                template = defaultTemplate;
+                if (template == null) {
+                    template = compile(readDefaultTemplate());
+                    defaultTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
+    private static String readDefaultTemplate() throws IOException {
+        try (InputStream in = BillTemplate.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        // Running straight from the source tree without copied resources
+        if (Files.exists(SOURCE_FILE)) {
+            return Files.readString(SOURCE_FILE);
+        }
+        throw new IOException("Bill template not found: " + RESOURCE);
+    }
+
+    /**
+     * Appends the filled template to out. Values are inserted as given, so
+     * callers escape anything that is not already HTML.
+     */
+    public void render(Map<String, String> values, StringBuilder out) {
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            String value = values.get(placeholders[i]);
+            out.append(value != null ? value : "");
+        }
+        out.append(literals[literals.length - 1]);
+    }
+
+    /** Length of the template text without placeholders, a lower bound for the output size. */
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    public static void escapeHtml(String text, StringBuilder out) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
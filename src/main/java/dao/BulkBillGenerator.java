@@ -0,0 +1,198 @@
+package dao;
+
+import util.DatabaseUtil;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-of-day bill generation for many orders at once.
+ *
+ * Orders are read in chunks with two set-based queries per chunk (headers,
+ * then all line items of the chunk), rendered to PDF in parallel on a
+ * fixed pool with a bounded queue, and stored in the bill archive. The
+ * archive keeps a fingerprint of the data each bill was rendered from, so
+ * bills whose order has not changed since the last run are skipped.
+ */
+public class BulkBillGenerator {
+    // Column on orders used by the date filter
+    static final String ORDER_DATE_COLUMN = "Order_Date";
+    private static final int CHUNK_SIZE = 500;
+
+    private final BillGenerator renderer;
+    private final int threads;
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int processed, int total);
+    }
+
+    public record Result(int generated, int skipped, Map<Integer, String> failures) {
+    }
+
+    public BulkBillGenerator(BillGenerator renderer) {
+        this(renderer, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkBillGenerator(BillGenerator renderer, int threads) {
+        this.renderer = renderer;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Generates bills for every order with fromOrderId <= Order_ID <= toOrderId. */
+    public Result generateBills(int fromOrderId, int toOrderId, ProgressListener listener)
+            throws SQLException, IOException {
+        return generate(new Filter("o.Order_ID BETWEEN ? AND ?", fromOrderId, toOrderId), listener);
+    }
+
+    /** Generates bills for every order placed on a day from fromDate to toDate inclusive. */
+    public Result generateBills(LocalDate fromDate, LocalDate toDate, ProgressListener listener)
+            throws SQLException, IOException {
+        return generate(new Filter("o." + ORDER_DATE_COLUMN + " >= ? AND o." + ORDER_DATE_COLUMN + " < ?",
+            Date.valueOf(fromDate), Date.valueOf(toDate.plusDays(1))), listener);
+    }
+
+    private record Filter(String where, Object from, Object to) {
+        int bind(PreparedStatement pstmt, int index) throws SQLException {
+            pstmt.setObject(index, from);
+            pstmt.setObject(index + 1, to);
+            return index + 2;
+        }
+    }
+
+    private Result generate(Filter filter, ProgressListener listener) throws SQLException, IOException {
+        BillArchive archive = renderer.archive();
+
+        AtomicInteger generated = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger processed = new AtomicInteger();
+        Map<Integer, String> failures = Collections.synchronizedMap(new TreeMap<>());
+
+        // Bounded queue: when rendering falls behind, the reader renders too instead of piling up bills
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        try (Connection conn = DatabaseUtil.getReadConnection()) {
+            int total = countOrders(conn, filter);
+            int lastOrderId = Integer.MIN_VALUE;
+
+            while (true) {
+                Map<Integer, BillData> chunk = loadChunk(conn, filter, lastOrderId);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                List<Future<?>> rendering = new ArrayList<>(chunk.size());
+                for (BillData bill : chunk.values()) {
+                    lastOrderId = bill.getOrderId();
+                    long fingerprint = BillGenerator.fingerprint(bill);
+
+                    if (archive.contains(bill.getOrderId(), BillGenerator.Format.PDF, fingerprint)) {
+                        skipped.incrementAndGet();
+                        listener.onProgress(processed.incrementAndGet(), total);
+                        continue;
+                    }
+
+                    rendering.add(pool.submit(() -> {
+                        try {
+                            archive.put(bill.getOrderId(), BillGenerator.Format.PDF, fingerprint,
+                                renderer.renderPdf(bill));
+                            generated.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            failures.put(bill.getOrderId(), e.getMessage());
+                        }
+                        listener.onProgress(processed.incrementAndGet(), total);
+                    }));
+                }
+
+                awaitAll(rendering);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return new Result(generated.get(), skipped.get(), new TreeMap<>(failures));
+    }
+
+    private int countOrders(Connection conn, Filter filter) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM orders o WHERE " + filter.where())) {
+            filter.bind(pstmt, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Next CHUNK_SIZE orders after lastOrderId, with all their line items, in two queries
+    private Map<Integer, BillData> loadChunk(Connection conn, Filter filter, int lastOrderId) throws SQLException {
+        Map<Integer, String[]> headers = new LinkedHashMap<>();
+        String headerQuery = BillGenerator.ORDER_QUERY + "WHERE " + filter.where() +
+                             " AND o.Order_ID > ? ORDER BY o.Order_ID LIMIT ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(headerQuery)) {
+            int index = filter.bind(pstmt, 1);
+            pstmt.setInt(index, lastOrderId);
+            pstmt.setInt(index + 1, CHUNK_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    headers.put(rs.getInt("Order_ID"),
+                        new String[]{rs.getString("CustomerName"), rs.getString("CustomerPhone")});
+                }
+            }
+        }
+        if (headers.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        int firstId = headers.keySet().iterator().next();
+        int lastId = lastOrderId;
+        for (int orderId : headers.keySet()) {
+            lastId = orderId;
+        }
+
+        Map<Integer, List<BillData.Item>> items;
+        String itemsQuery = BillGenerator.ITEMS_QUERY + "WHERE od.Order_ID BETWEEN ? AND ? ORDER BY od.Order_ID";
+        try (PreparedStatement pstmt = conn.prepareStatement(itemsQuery)) {
+            pstmt.setInt(1, firstId);
+            pstmt.setInt(2, lastId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // The id range can include orders the filter excluded
+                items = BillGenerator.readItems(conn, rs, headers.keySet());
+            }
+        }
+
+        Map<Integer, BillData> bills = new LinkedHashMap<>();
+        for (Map.Entry<Integer, String[]> header : headers.entrySet()) {
+            int orderId = header.getKey();
+            bills.put(orderId, new BillData(orderId, header.getValue()[0], header.getValue()[1],
+                items.getOrDefault(orderId, List.of())));
+        }
+        return bills;
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rendering bills", e);
+            } catch (java.util.concurrent.ExecutionException e) {
+                throw new IOException("Bill rendering failed", e.getCause());
+            }
+        }
+    }
+}
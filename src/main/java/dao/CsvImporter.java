@@ -0,0 +1,223 @@
+package dao;
+
+import util.Csv;
+import util.Metrics;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streams a CSV file into a table through {@link PharmacyDAO#insertRecords},
+ * so rows are validated (in parallel for big chunks) and written in batched
+ * transactions of chunkSize rows.
+ *
+ * The first record names the columns. The file is read a chunk at a time
+ * and the next chunk is parsed while the previous one is being written, so
+ * at most two chunks are in memory whatever the file size. Empty fields of
+ * non-text columns are inserted as NULL; text columns keep the empty string
+ * so validation still sees it. Rows that fail to parse, validate or insert
+ * are copied to the reject file with their line number and the reason.
+ */
+public class CsvImporter {
+    // Rows parsed per round; one round is written while the next is parsed
+    private static final int READ_CHUNK_ROWS = 10_000;
+    private static final Metrics.Timer CHUNK_TIMER = Metrics.timer("import.chunk");
+
+    private final PharmacyDAO dao;
+    private final int chunkSize;
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long rowsRead, long inserted, long rejected, double rowsPerSecond);
+    }
+
+    public record Result(long rowsRead, long inserted, long rejected, long elapsedMillis) {
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMillis;
+        }
+    }
+
+    public CsvImporter(PharmacyDAO dao) {
+        this(dao, PharmacyDAO.DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    /** chunkSize is the number of rows per transaction. */
+    public CsvImporter(PharmacyDAO dao, int chunkSize) {
+        this.dao = dao;
+        this.chunkSize = chunkSize;
+    }
+
+    // One round of parsed rows and the file line each came from, plus the records that did not parse
+    private record Chunk(List<Vector<String>> rows, long[] lines, int malformed) {
+    }
+
+    public Result importFile(String tableName, Path csvFile, Path rejectFile, ProgressListener listener)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        long rowsRead = 0, inserted = 0, rejected = 0;
+
+        ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "csv-import-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Csv.Reader reader = new Csv.Reader(
+                 new InputStreamReader(Files.newInputStream(csvFile), StandardCharsets.UTF_8));
+             BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+
+            List<String> header = reader.readRecord();
+            if (header == null) {
+                throw new IOException("Empty file: " + csvFile);
+            }
+            TableMetadata metadata = dao.getTableMetadata(tableName);
+            Vector<String> columns = resolveColumns(metadata, header);
+            boolean[] nullWhenEmpty = new boolean[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                nullWhenEmpty[i] = !metadata.isTextColumn(columns.get(i));
+            }
+            StringBuilder rejectHeader = new StringBuilder("line,error,");
+            Csv.appendRecord(rejectHeader, header);
+            rejects.append(rejectHeader);
+
+            Chunk pending = null;
+            Future<BatchResult> pendingResult = null;
+            while (true) {
+                Chunk chunk;
+                try {
+                    chunk = readChunk(reader, nullWhenEmpty, rejects);
+                } catch (IOException e) {
+                    // Let the chunk being written finish and keep its rejects before giving up
+                    if (pending != null) {
+                        try {
+                            writeRejects(rejects, pending, await(pendingResult).getFailures());
+                        } catch (IOException | SQLException suppressed) {
+                            e.addSuppressed(suppressed);
+                        }
+                    }
+                    throw e;
+                }
+                rowsRead += chunk.rows().size() + chunk.malformed();
+                rejected += chunk.malformed();
+
+                if (pending != null) {
+                    BatchResult result = await(pendingResult);
+                    inserted += result.getSucceeded();
+                    rejected += result.getFailed();
+                    writeRejects(rejects, pending, result.getFailures());
+                    listener.onProgress(rowsRead, inserted, rejected, perSecond(rowsRead, start));
+                }
+                if (chunk.rows().isEmpty()) {
+                    break;
+                }
+
+                pending = chunk;
+                pendingResult = writer.submit(() -> {
+                    try (Metrics.Sample sample = CHUNK_TIMER.time()) {
+                        BatchResult result = dao.insertRecords(tableName, columns, chunk.rows(), chunkSize);
+                        sample.success();
+                        return result;
+                    }
+                });
+            }
+        } finally {
+            writer.shutdownNow();
+        }
+
+        return new Result(rowsRead, inserted, rejected, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Header names mapped to the table's own spelling, unknown columns rejected up front
+    private static Vector<String> resolveColumns(TableMetadata metadata, List<String> header) throws SQLException {
+        Vector<String> columns = new Vector<>(header.size());
+        for (String name : header) {
+            int index = metadata.indexOf(name.trim());
+            if (index < 0) {
+                throw new SQLException("Column " + name + " does not exist in " + metadata.getTableName());
+            }
+            columns.add(metadata.getColumnNames().get(index));
+        }
+        return columns;
+    }
+
+    // Records that do not parse go straight to the reject file and reading carries on with the next line
+    private static Chunk readChunk(Csv.Reader reader, boolean[] nullWhenEmpty, BufferedWriter rejects)
+            throws IOException {
+        List<Vector<String>> rows = new ArrayList<>(READ_CHUNK_ROWS);
+        long[] lines = new long[READ_CHUNK_ROWS];
+        int malformed = 0;
+        List<String> record;
+        while (rows.size() < READ_CHUNK_ROWS) {
+            try {
+                record = reader.readRecord();
+            } catch (Csv.MalformedRecordException e) {
+                StringBuilder out = new StringBuilder();
+                out.append(e.getLine()).append(',');
+                Csv.appendField(out, e.getMessage());
+                out.append(',');
+                Csv.appendRecord(out, List.of(e.getText()));
+                rejects.append(out);
+                malformed++;
+                continue;
+            }
+            if (record == null) {
+                break;
+            }
+            // Skip blank lines
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            Vector<String> values = new Vector<>(record.size());
+            for (int i = 0; i < record.size(); i++) {
+                String value = record.get(i);
+                values.add(value.isEmpty() && i < nullWhenEmpty.length && nullWhenEmpty[i] ? null : value);
+            }
+            lines[rows.size()] = reader.getRecordLine();
+            rows.add(values);
+        }
+        return new Chunk(rows, lines, malformed);
+    }
+
+    private static void writeRejects(BufferedWriter rejects, Chunk chunk, Map<Integer, String> failures)
+            throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<Integer, String> failure : failures.entrySet()) {
+            int row = failure.getKey();
+            out.append(chunk.lines()[row]).append(',');
+            Csv.appendField(out, failure.getValue());
+            out.append(',');
+            Csv.appendRecord(out, chunk.rows().get(row));
+        }
+        rejects.append(out);
+    }
+
+    private static BatchResult await(Future<BatchResult> result) throws IOException, SQLException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new IOException("Import failed", e.getCause());
+        }
+    }
+
+    private static double perSecond(long rows, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed == 0 ? rows : rows * 1e9 / elapsed;
+    }
+}
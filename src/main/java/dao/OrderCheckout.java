@@ -0,0 +1,222 @@
+package dao;
+
+import util.DatabaseUtil;
+import util.Metrics;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sells a cart as one transaction: the order row, its line items and the
+ * stock decrements either all happen or none do, so two counters selling
+ * the last units of a product cannot both succeed.
+ *
+ * Only the cart's product rows are locked (SELECT ... FOR UPDATE), always
+ * in ascending Product_ID order, so two checkouts sharing products queue
+ * behind each other instead of deadlocking. A checkout that still loses a
+ * deadlock or waits too long for a lock is rolled back and retried after a
+ * short randomised backoff.
+ */
+public class OrderCheckout {
+    // Attempts per checkout, each can be overridden with -Dpharma.checkout.<name>=<value>
+    private static final int MAX_ATTEMPTS = Integer.getInteger("pharma.checkout.maxAttempts", 5);
+    // Seconds a checkout waits for its product locks before it gives up and retries
+    private static final int LOCK_TIMEOUT_SEC = Integer.getInteger("pharma.checkout.lockTimeoutSec", 5);
+    private static final long BACKOFF_MS = Long.getLong("pharma.checkout.backoffMs", 10);
+
+    private static final Metrics.Timer CHECKOUT_TIMER = Metrics.timer("dao.checkout");
+    private static final Metrics.Timer RETRY_TIMER = Metrics.timer("dao.checkout.retry");
+
+    static final String LOCK_PRODUCTS = "SELECT Product_ID, Price, Stock FROM product WHERE Product_ID IN (";
+    static final String INSERT_ORDER = "INSERT INTO orders (Customer_ID, Order_Date) VALUES (?, ?)";
+    static final String INSERT_ITEM = "INSERT INTO orderdetails " +
+                                      "(Order_ID, Product_ID, Quantity, PriceAtPurchase, Subtotal) " +
+                                      "VALUES (?, ?, ?, ?, ?)";
+    static final String DECREMENT_STOCK = "UPDATE product SET Stock = Stock - ? WHERE Product_ID = ?";
+
+    // Lock statements by cart size, a cart rarely has more than a few distinct products
+    private static final Map<Integer, String> LOCK_QUERIES = new ConcurrentHashMap<>();
+
+    public record Line(int productId, int quantity) {
+    }
+
+    /**
+     * Creates the order for the customer with today's date and returns its
+     * id. Lines for the same product are added together; each item is
+     * charged the product's current price. Throws OutOfStockException when a
+     * product is unknown or short, having written nothing.
+     */
+    public int checkout(int customerId, List<Line> lines) throws SQLException {
+        SortedMap<Integer, Integer> quantities = new TreeMap<>();
+        for (Line line : lines) {
+            if (line.quantity() <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive: " + line);
+            }
+            quantities.merge(line.productId(), line.quantity(), Math::addExact);
+        }
+        if (quantities.isEmpty()) {
+            throw new IllegalArgumentException("Cart is empty");
+        }
+
+        try (Metrics.Sample sample = CHECKOUT_TIMER.time()) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    int orderId = attempt(customerId, quantities);
+                    sample.success();
+                    return orderId;
+                } catch (SQLException e) {
+                    if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                        throw e;
+                    }
+                    backoff(attempt);
+                }
+            }
+        }
+    }
+
+    private int attempt(int customerId, SortedMap<Integer, Integer> quantities) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, BigDecimal> prices = lockProducts(conn, quantities);
+                int orderId = insertOrder(conn, customerId);
+                insertItems(conn, orderId, quantities, prices);
+                decrementStock(conn, quantities);
+                conn.commit();
+                QueryCache.invalidate("orders");
+                QueryCache.invalidate("orderdetails");
+                QueryCache.invalidate(ProductCatalog.TABLE);
+                // Stock is shown when browsing products; names and prices are unchanged
+                ProductCatalog.invalidateSnapshot();
+                return orderId;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Locks the cart's rows in key order and checks there is enough of each
+    private static Map<Integer, BigDecimal> lockProducts(Connection conn, SortedMap<Integer, Integer> quantities)
+            throws SQLException {
+        String query = LOCK_QUERIES.computeIfAbsent(quantities.size(), size ->
+            LOCK_PRODUCTS + String.join(", ", Collections.nCopies(size, "?")) + ") ORDER BY Product_ID FOR UPDATE");
+        Map<Integer, BigDecimal> prices = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setQueryTimeout(LOCK_TIMEOUT_SEC);
+            int param = 1;
+            for (int productId : quantities.keySet()) {
+                pstmt.setInt(param++, productId);
+            }
+            try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, query)) {
+                while (rs.next()) {
+                    int productId = rs.getInt(1);
+                    int stock = rs.getInt(3);
+                    int requested = quantities.get(productId);
+                    if (stock < requested) {
+                        throw new OutOfStockException(productId, requested, stock);
+                    }
+                    prices.put(productId, rs.getBigDecimal(2));
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            if (!prices.containsKey(entry.getKey())) {
+                throw new OutOfStockException(entry.getKey(), entry.getValue(), 0);
+            }
+        }
+        return prices;
+    }
+
+    private static int insertOrder(Connection conn, int customerId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_ORDER, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, customerId);
+            pstmt.setDate(2, Date.valueOf(LocalDate.now()));
+            PharmacyDAO.executeUpdate(pstmt, INSERT_ORDER);
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No order id was generated");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private static void insertItems(Connection conn, int orderId, SortedMap<Integer, Integer> quantities,
+                                    Map<Integer, BigDecimal> prices) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_ITEM)) {
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                BigDecimal price = prices.get(entry.getKey());
+                pstmt.setInt(1, orderId);
+                pstmt.setInt(2, entry.getKey());
+                pstmt.setInt(3, entry.getValue());
+                pstmt.setBigDecimal(4, price);
+                pstmt.setBigDecimal(5, price.multiply(BigDecimal.valueOf(entry.getValue())));
+                pstmt.addBatch();
+            }
+            PharmacyDAO.executeBatch(pstmt, INSERT_ITEM);
+        }
+    }
+
+    private static void decrementStock(Connection conn, SortedMap<Integer, Integer> quantities) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(DECREMENT_STOCK)) {
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                pstmt.setInt(1, entry.getValue());
+                pstmt.setInt(2, entry.getKey());
+                pstmt.addBatch();
+            }
+            PharmacyDAO.executeBatch(pstmt, DECREMENT_STOCK);
+        }
+    }
+
+    // Deadlock victims (40001, MySQL 1213) and lock wait timeouts (MySQL 1205,
+    // or the query timeout on the lock statement) are worth another attempt
+    static boolean isRetryable(SQLException e) {
+        if (e instanceof OutOfStockException) {
+            return false;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException || t instanceof SQLTimeoutException) {
+                return true;
+            }
+            if (t instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                if ("40001".equals(state) || sql.getErrorCode() == 1205 || sql.getErrorCode() == 1213
+                        || (state != null && state.startsWith("HYT"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void backoff(int attempt) throws SQLException {
+        long limit = BACKOFF_MS << Math.min(attempt - 1, 6);
+        long nanos = ThreadLocalRandom.current().nextLong(limit / 2, limit + 1) * 1_000_000;
+        RETRY_TIMER.record(nanos, true);
+        try {
+            Thread.sleep(nanos / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying checkout", e);
+        }
+    }
+}
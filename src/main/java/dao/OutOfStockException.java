@@ -0,0 +1,33 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * A checkout asked for more of a product than is in stock, or for a
+ * product that does not exist (available is then 0). Nothing was written.
+ */
+public class OutOfStockException extends SQLException {
+    private final int productId;
+    private final int requested;
+    private final int available;
+
+    public OutOfStockException(int productId, int requested, int available) {
+        super("Not enough stock for product " + productId + ": requested " + requested
+              + ", available " + available, "45000");
+        this.productId = productId;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public int getAvailable() {
+        return available;
+    }
+}
@@ -1,104 +1,903 @@
 package dao;
 
+import dao.SchemaCache.Kind;
+import util.ChannelTextWriter;
+import util.Csv;
 import util.DatabaseUtil;
-import util.ValidationUtil;
+import util.Json;
+import util.Metrics;
+import util.RowValidator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.stream.IntStream;
 import javax.swing.table.DefaultTableModel;
 
 public class PharmacyDAO {
+    // Rows per transaction for the batch insert/update methods
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
+    // Batches at least this big are validated in parallel
+    private static final int PARALLEL_VALIDATION_ROWS = 2_000;
+
+    private static final Metrics.Timer TABLE_NAMES_TIMER = Metrics.timer("dao.getTableNames");
+    private static final Metrics.Timer TABLE_DATA_TIMER = Metrics.timer("dao.getTableData");
+    private static final Metrics.Timer ROW_COUNT_TIMER = Metrics.timer("dao.getRowCount");
+    private static final Metrics.Timer TABLE_PAGE_TIMER = Metrics.timer("dao.getTablePage");
+    private static final Metrics.Timer INSERT_TIMER = Metrics.timer("dao.insertRecord");
+    private static final Metrics.Timer UPDATE_TIMER = Metrics.timer("dao.updateRecord");
+    private static final Metrics.Timer DELETE_TIMER = Metrics.timer("dao.deleteRecord");
+    private static final Metrics.Timer INSERT_BATCH_TIMER = Metrics.timer("dao.insertRecords");
+    private static final Metrics.Timer UPDATE_BATCH_TIMER = Metrics.timer("dao.updateRecords");
+    private static final Metrics.Timer SEARCH_TIMER = Metrics.timer("dao.searchTable");
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("dao.export");
+
+    // Rows per round trip when streaming an export
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    public enum ExportFormat {
+        CSV, JSON_LINES;
+
+        /** JSON Lines for .jsonl or .ndjson (optionally .gz), CSV otherwise. */
+        public static ExportFormat forFileName(String fileName) {
+            String name = fileName.toLowerCase();
+            if (name.endsWith(".gz")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON_LINES : CSV;
+        }
+    }
+
+    // Upper bound on rows returned by searchTable when the caller does not give one
+    public static final int DEFAULT_SEARCH_LIMIT = 1000;
+
+    // Key of the table list in QueryCache, which comes from DatabaseMetaData rather than a query
+    private static final String TABLE_NAMES = "DatabaseMetaData.getTables";
+
     public Vector<String> getTableNames() throws SQLException {
-        Vector<String> tables = new Vector<>();
-        try (Connection conn = DatabaseUtil.getConnection();
-             ResultSet rs = conn.getMetaData().getTables("pharmsdb", null, "%", new String[]{"TABLE"})) {
-            while (rs.next()) {
-                tables.add(rs.getString("TABLE_NAME"));
+        try (Metrics.Sample sample = TABLE_NAMES_TIMER.time()) {
+            QueryCache.Result names = QueryCache.get(TABLE_NAMES, List.of(), Set.of(), () -> {
+                List<String> tables = new ArrayList<>();
+                try (Connection conn = DatabaseUtil.getConnection();
+                     ResultSet rs = conn.getMetaData().getTables("pharmsdb", null, "%", new String[]{"TABLE"})) {
+                    while (rs.next()) {
+                        tables.add(rs.getString("TABLE_NAME"));
+                    }
+                }
+                return new QueryCache.Result(new String[]{"TABLE_NAME"}, tables.toArray());
+            });
+            Vector<String> tables = new Vector<>(names.getRowCount());
+            for (int i = 0; i < names.getRowCount(); i++) {
+                tables.add((String) names.getValue(i, 0));
             }
+            sample.success();
+            return tables;
+        }
+    }
+
+    /** The whole table from memory when a cache holds it (currently the product catalog), else null. */
+    public DefaultTableModel getCachedTableData(String tableName) throws SQLException {
+        return isProductTable(tableName) ? ProductCatalog.getTableModel() : null;
+    }
+
+    /** Drops the cached copies of the table, e.g. when it is known to have been written elsewhere. */
+    public void invalidateCachedTableData(String tableName) {
+        if (isProductTable(tableName)) {
+            ProductCatalog.invalidateSnapshot();
         }
-        return tables;
+        QueryCache.invalidate(tableName);
     }
 
     public DefaultTableModel getTableData(String tableName) throws SQLException {
-        Vector<String> columnNames = new Vector<>();
-        Vector<Vector<Object>> data = new Vector<>();
+        DefaultTableModel cached = getCachedTableData(tableName);
+        if (cached != null) {
+            return cached;
+        }
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+        String query = SchemaCache.getSql(Kind.SELECT_ALL, tableName, List.of());
+        try (Metrics.Sample sample = TABLE_DATA_TIMER.time()) {
+            DefaultTableModel model = QueryCache.get(query, List.of(), Set.of(tableName), () -> {
+                try (Connection conn = DatabaseUtil.getReadConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = executeQuery(stmt, query)) {
+                    return QueryCache.Result.read(rs);
+                }
+            }).toTableModel();
+            sample.success();
+            return model;
+        }
+    }
 
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int cols = rsmd.getColumnCount();
+    /**
+     * Rows of the table matching the search text, filtered in the database.
+     * With a column, a text column is matched by prefix and any other column
+     * by exact value; both forms can use an index on the column, which is
+     * hinted when one exists. Without a column (null) the text may appear
+     * anywhere in any text column, which needs a scan. Matching is case
+     * insensitive under the usual MySQL collations. At most limit rows.
+     */
+    public DefaultTableModel searchTable(String tableName, String column, String text, int limit)
+            throws SQLException {
+        TableMetadata metadata = getTableMetadata(tableName);
+        String query;
+        List<String> params = new ArrayList<>();
+        if (column != null) {
+            if (metadata.indexOf(column) < 0) {
+                throw new SQLException("Unknown column " + column + " in " + tableName);
+            }
+            // Use the metadata spelling, the column name ends up in the SQL text
+            String name = metadata.getColumnNames().get(metadata.indexOf(column));
+            boolean prefix = metadata.isTextColumn(name);
+            query = SchemaCache.getSql(prefix ? Kind.SEARCH_PREFIX : Kind.SEARCH_EXACT, tableName, List.of(name));
+            params.add(prefix ? escapeLike(text) + "%" : text);
+        } else {
+            List<String> textColumns = new ArrayList<>();
+            for (String name : metadata.getColumnNames()) {
+                if (metadata.isTextColumn(name)) {
+                    textColumns.add(name);
+                }
+            }
+            if (textColumns.isEmpty()) {
+                return new DefaultTableModel(new Vector<>(metadata.getColumnNames()), 0);
+            }
+            query = SchemaCache.getSql(Kind.SEARCH_CONTAINS, tableName, textColumns);
+            String pattern = "%" + escapeLike(text) + "%";
+            for (int i = 0; i < textColumns.size(); i++) {
+                params.add(pattern);
+            }
+        }
+
+        List<Object> cacheKey = new ArrayList<>(params);
+        cacheKey.add(limit);
+        try (Metrics.Sample sample = SEARCH_TIMER.time()) {
+            DefaultTableModel model = QueryCache.get(query, cacheKey, Set.of(tableName), () -> {
+                try (Connection conn = DatabaseUtil.getReadConnection();
+                     PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    for (int i = 0; i < params.size(); i++) {
+                        pstmt.setString(i + 1, params.get(i));
+                    }
+                    pstmt.setInt(params.size() + 1, limit);
+                    try (ResultSet rs = executeQuery(pstmt, query)) {
+                        return QueryCache.Result.read(rs);
+                    }
+                }
+            }).toTableModel();
+            sample.success();
+            return model;
+        }
+    }
+
+    public DefaultTableModel searchTable(String tableName, String column, String text) throws SQLException {
+        return searchTable(tableName, column, text, DEFAULT_SEARCH_LIMIT);
+    }
+
+    /** Exports the whole table, see {@link #exportQuery}. */
+    public long exportTable(String tableName, Path target, ExportFormat format, boolean gzip)
+            throws SQLException, IOException {
+        return exportQuery(SchemaCache.getSql(Kind.SELECT_ALL, tableName, List.of()), List.of(), target, format, gzip);
+    }
+
+    /**
+     * Streams the result of a query to a CSV (with a header row) or JSON
+     * Lines file without holding it in memory. Rows come from a forward-only
+     * cursor EXPORT_FETCH_SIZE at a time (a server-side cursor on MySQL,
+     * where the pool enables useCursorFetch) and are encoded straight into
+     * the output buffer. The file is written under a temporary name and
+     * renamed when complete, so a failed export never leaves a partial file
+     * at target. Returns the number of rows written.
+     */
+    public long exportQuery(String query, List<?> params, Path target, ExportFormat format, boolean gzip)
+            throws SQLException, IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        try (Metrics.Sample sample = EXPORT_TIMER.time();
+             Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                 ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(EXPORT_FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+
+            long rows;
+            try (ResultSet rs = executeQuery(pstmt, query);
+                 ChannelTextWriter out = new ChannelTextWriter(partial, gzip)) {
+                rows = format == ExportFormat.JSON_LINES ? writeJsonLines(rs, out) : writeCsv(rs, out);
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            sample.success();
+            return rows;
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private static long writeCsv(ResultSet rs, ChannelTextWriter out) throws SQLException, IOException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int cols = rsmd.getColumnCount();
+        StringBuilder line = new StringBuilder(256);
+        for (int i = 1; i <= cols; i++) {
+            if (i > 1) line.append(',');
+            Csv.appendField(line, rsmd.getColumnLabel(i));
+        }
+        out.write(line.append('\n'));
+
+        long rows = 0;
+        while (rs.next()) {
+            line.setLength(0);
+            for (int i = 1; i <= cols; i++) {
+                if (i > 1) line.append(',');
+                Object value = rs.getObject(i);
+                Csv.appendField(line, value instanceof BigDecimal decimal ? decimal.toPlainString()
+                    : value == null ? null : value.toString());
+            }
+            out.write(line.append('\n'));
+            rows++;
+        }
+        return rows;
+    }
+
+    private static long writeJsonLines(ResultSet rs, ChannelTextWriter out) throws SQLException, IOException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int cols = rsmd.getColumnCount();
+        // Keys are the same on every line, escape them once
+        String[] keys = new String[cols];
+        for (int i = 1; i <= cols; i++) {
+            StringBuilder key = new StringBuilder(i == 1 ? "{" : ",");
+            Json.appendString(key, rsmd.getColumnLabel(i));
+            keys[i - 1] = key.append(':').toString();
+        }
 
+        long rows = 0;
+        StringBuilder line = new StringBuilder(256);
+        while (rs.next()) {
+            line.setLength(0);
             for (int i = 1; i <= cols; i++) {
-                columnNames.add(rsmd.getColumnName(i));
+                line.append(keys[i - 1]);
+                Json.appendValue(line, rs.getObject(i));
             }
+            out.write(line.append("}\n"));
+            rows++;
+        }
+        return rows;
+    }
+
+    // '!' is the ESCAPE character of the SEARCH_* statements
+    private static String escapeLike(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 4);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == '!') {
+                escaped.append('!');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Column names, types, primary key and auto-increment columns of the
+     * table. Loaded from DatabaseMetaData once and then served from memory.
+     */
+    public TableMetadata getTableMetadata(String tableName) throws SQLException {
+        return SchemaCache.getMetadata(tableName);
+    }
+
+    /** Drops cached metadata, generated SQL and results for the table, e.g. after an ALTER TABLE. */
+    public void invalidateTableMetadata(String tableName) {
+        SchemaCache.invalidate(tableName);
+        QueryCache.invalidate(tableName);
+    }
+
+    /**
+     * Returns the primary key column of the table, or null when the table has
+     * no primary key or a composite one (keyset paging needs a single column).
+     */
+    public String getPrimaryKeyColumn(String tableName) throws SQLException {
+        return getTableMetadata(tableName).getPrimaryKeyColumn();
+    }
+
+    public Vector<String> getColumnNames(String tableName) throws SQLException {
+        return new Vector<>(getTableMetadata(tableName).getColumnNames());
+    }
 
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                for (int i = 1; i <= cols; i++) {
-                    row.add(rs.getObject(i));
+    public int getRowCount(String tableName) throws SQLException {
+        String query = SchemaCache.getSql(Kind.COUNT, tableName, List.of());
+        try (Metrics.Sample sample = ROW_COUNT_TIMER.time()) {
+            QueryCache.Result result = QueryCache.get(query, List.of(), Set.of(tableName), () -> {
+                try (Connection conn = DatabaseUtil.getReadConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = executeQuery(stmt, query)) {
+                    return QueryCache.Result.read(rs);
                 }
-                data.add(row);
+            });
+            int count = result.getRowCount() > 0 ? ((Number) result.getValue(0, 0)).intValue() : 0;
+            sample.success();
+            return count;
+        }
+    }
+
+    /**
+     * Returns the primary key of the row at the given position in key order,
+     * or null past the end. Only the key index is walked, no rows are read.
+     */
+    public Object getKeyAtOffset(String tableName, String pkColumn, long offset) throws SQLException {
+        String query = SchemaCache.getSql(Kind.SELECT_KEY_AT, tableName, List.of(pkColumn));
+        try (Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, offset);
+            try (ResultSet rs = executeQuery(pstmt, query)) {
+                return rs.next() ? rs.getObject(1) : null;
             }
         }
+    }
+
+    /**
+     * Keyset pagination: reads up to pageSize rows ordered by primary key,
+     * starting at fromKey (inclusive or exclusive). A null fromKey starts at
+     * the first row. Rows are returned as plain arrays in column order.
+     */
+    public List<Object[]> getTablePage(String tableName, String pkColumn, Object fromKey,
+                                       boolean inclusive, int pageSize) throws SQLException {
+        Kind kind = fromKey == null ? Kind.SELECT_FIRST_PAGE
+                  : inclusive ? Kind.SELECT_PAGE_FROM : Kind.SELECT_PAGE_AFTER;
+        String query = SchemaCache.getSql(kind, tableName, List.of(pkColumn));
 
-        return new DefaultTableModel(data, columnNames);
+        List<Object[]> rows = new ArrayList<>(pageSize);
+        try (Metrics.Sample sample = TABLE_PAGE_TIMER.time();
+             Connection conn = DatabaseUtil.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            int param = 1;
+            if (fromKey != null) {
+                pstmt.setObject(param++, fromKey);
+            }
+            pstmt.setInt(param, pageSize);
+            pstmt.setFetchSize(pageSize);
+
+            try (ResultSet rs = executeQuery(pstmt, query)) {
+                int cols = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    Object[] row = new Object[cols];
+                    for (int i = 0; i < cols; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+            sample.success();
+        }
+        return rows;
     }
 
-    public void insertRecord(String tableName, Vector<String> columnNames, Vector<String> values) throws SQLException {
-        // Validate the data before insertion
-        String validationError = null;
-        if (tableName.equalsIgnoreCase("customer")) {
-            validationError = ValidationUtil.validateCustomerData(columnNames, values);
-        } else if (tableName.equalsIgnoreCase("product")) {
-            validationError = ValidationUtil.validateProductData(columnNames, values);
+    /**
+     * Reads the page that starts at the given row position. The key at that
+     * position is looked up on the key index first, so the rows themselves
+     * are still read with keyset pagination rather than OFFSET.
+     */
+    public List<Object[]> getTablePageAt(String tableName, String pkColumn, long rowOffset,
+                                         int pageSize) throws SQLException {
+        if (rowOffset == 0) {
+            return getTablePage(tableName, pkColumn, null, true, pageSize);
         }
-        
-        if (validationError != null) {
-            throw new SQLException(validationError);
+        Object startKey = getKeyAtOffset(tableName, pkColumn, rowOffset);
+        if (startKey == null) {
+            return new ArrayList<>();
         }
+        return getTablePage(tableName, pkColumn, startKey, true, pageSize);
+    }
 
-        StringBuilder query = new StringBuilder("INSERT INTO " + tableName + " (");
-        query.append(String.join(",", columnNames));
-        query.append(") VALUES (");
-        for (int i = 0; i < columnNames.size(); i++) {
-            query.append(i < columnNames.size() - 1 ? "?," : "?");
+    /**
+     * Inserts the row and returns its primary key: the value generated by
+     * the database, or the one supplied in values. Null when the table has
+     * no single-column primary key.
+     */
+    public Object insertRecord(String tableName, Vector<String> columnNames, Vector<String> values) throws SQLException {
+        try (Metrics.Sample sample = INSERT_TIMER.time()) {
+            // Validate the data before insertion
+            String validationError = validate(tableName, columnNames, values);
+            if (validationError != null) {
+                throw new SQLException(validationError);
+            }
+
+            String pkColumn = getPrimaryKeyColumn(tableName);
+            int pkIndex = pkColumn == null ? -1 : indexOfIgnoreCase(columnNames, pkColumn);
+            boolean generated = pkColumn != null && pkIndex < 0;
+            Object key = pkIndex >= 0 ? values.get(pkIndex) : null;
+
+            String query = SchemaCache.getSql(Kind.INSERT, tableName, columnNames);
+            try (Connection conn = writeConnection()) {
+                if (conn == null) {
+                    journal(WriteJournal.Op.INSERT, tableName, columnNames, values);
+                    sample.success();
+                    return key;
+                }
+                try (PreparedStatement pstmt = generated
+                     ? conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)
+                     : conn.prepareStatement(query)) {
+                    bindInsert(pstmt, values);
+                    executeUpdate(pstmt, query);
+                    if (generated) {
+                        try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                            key = keys.next() ? keys.getObject(1) : null;
+                        }
+                    }
+                }
+            }
+            QueryCache.invalidate(tableName);
+            if (isProductTable(tableName)) {
+                ProductCatalog.invalidateSnapshot();
+            }
+            sample.success();
+            return key;
         }
-        query.append(")");
+    }
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
-            for (int i = 0; i < values.size(); i++) {
-                pstmt.setString(i + 1, values.get(i));
+    /** The row with the given primary key, in table column order, or null if there is none. */
+    public Object[] getRow(String tableName, String pkColumn, Object key) throws SQLException {
+        try (Connection conn = DatabaseUtil.getReadConnection()) {
+            return readRow(conn, Kind.SELECT_ROW, tableName, pkColumn, key);
+        }
+    }
+
+    private static Object[] readRow(Connection conn, Kind kind, String tableName, String pkColumn, Object key)
+            throws SQLException {
+        String query = SchemaCache.getSql(kind, tableName, List.of(pkColumn));
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setObject(1, key);
+            try (ResultSet rs = executeQuery(pstmt, query)) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Object[] row = new Object[rs.getMetaData().getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                return row;
             }
-            pstmt.executeUpdate();
         }
     }
 
+    /**
+     * Writes every given column of the row whose key is the first value,
+     * whatever the row holds now. Used where there is no earlier read to
+     * check against; the grid and the HTTP API use the overload that takes
+     * the original row.
+     */
     public void updateRecord(String tableName, Vector<String> columnNames, Vector<String> values) throws SQLException {
-        StringBuilder query = new StringBuilder("UPDATE " + tableName + " SET ");
+        String query = SchemaCache.getSql(Kind.UPDATE, tableName, columnNames);
+        try (Metrics.Sample sample = UPDATE_TIMER.time();
+             Connection conn = writeConnection()) {
+            if (conn == null) {
+                journal(WriteJournal.Op.UPDATE, tableName, columnNames, values);
+                sample.success();
+                return;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                bindUpdate(pstmt, values);
+                executeUpdate(pstmt, query);
+            }
+            QueryCache.invalidate(tableName);
+            if (isProductTable(tableName)) {
+                ProductCatalog.invalidate(values.get(0));
+            }
+            if (isOrderTable(tableName)) {
+                SalesAnalytics.markStale();
+            }
+            sample.success();
+        }
+    }
+
+    /**
+     * Optimistic update of one row. original is the row as the caller read
+     * it, in the same column order as columnNames (key first), and values
+     * are the edited values as text. Only columns whose text differs from
+     * original are written, nothing at all when none do. The row is locked
+     * and compared with original first; if any column has changed since,
+     * or the row is gone, nothing is written and UpdateConflictException
+     * carries the current row. Returns the row as stored afterwards.
+     */
+    public Object[] updateRecord(String tableName, Vector<String> columnNames, Object[] original,
+                                 Vector<String> values) throws SQLException {
+        if (!values.get(0).equals(text(original[0]))) {
+            throw new IllegalArgumentException("The primary key of a row cannot be changed");
+        }
+        String pkColumn = columnNames.get(0);
+        Object key = original[0];
+
+        Vector<String> changedColumns = new Vector<>();
+        Vector<String> changedValues = new Vector<>();
+        changedColumns.add(pkColumn);
+        changedValues.add(values.get(0));
         for (int i = 1; i < columnNames.size(); i++) {
-            query.append(columnNames.get(i)).append("=?");
-            if (i < columnNames.size() - 1) query.append(", ");
+            if (!values.get(i).equals(text(original[i]))) {
+                changedColumns.add(columnNames.get(i));
+                changedValues.add(values.get(i));
+            }
+        }
+        if (changedColumns.size() == 1) {
+            return getRow(tableName, pkColumn, key);
         }
-        query.append(" WHERE ").append(columnNames.get(0)).append("=?");
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
-            for (int i = 1; i < values.size(); i++) {
-                pstmt.setString(i, values.get(i));
+        String query = SchemaCache.getSql(Kind.UPDATE, tableName, changedColumns);
+        try (Metrics.Sample sample = UPDATE_TIMER.time();
+             Connection conn = writeConnection()) {
+            if (conn == null) {
+                // Without the database there is no row to check against; the journal keeps just the edited columns
+                journal(WriteJournal.Op.UPDATE, tableName, changedColumns, changedValues);
+                sample.success();
+                Object[] edited = original.clone();
+                for (int i = 1; i < columnNames.size(); i++) {
+                    edited[i] = values.get(i);
+                }
+                return edited;
+            }
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            Object[] updated;
+            try {
+                Object[] current = readRow(conn, Kind.SELECT_ROW_FOR_UPDATE, tableName, pkColumn, key);
+                if (current == null || !sameRow(current, original)) {
+                    throw new UpdateConflictException(tableName, key, current);
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    bindUpdate(pstmt, changedValues);
+                    executeUpdate(pstmt, query);
+                }
+                updated = readRow(conn, Kind.SELECT_ROW, tableName, pkColumn, key);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            QueryCache.invalidate(tableName);
+            if (isProductTable(tableName)) {
+                ProductCatalog.invalidate(values.get(0));
+            }
+            if (isOrderTable(tableName)) {
+                SalesAnalytics.markStale();
             }
-            pstmt.setString(values.size(), values.get(0));
-            pstmt.executeUpdate();
+            sample.success();
+            return updated;
         }
     }
 
-    public void deleteRecord(String tableName, String primaryKeyColumn, String primaryKeyValue) throws SQLException {
-        String query = "DELETE FROM " + tableName + " WHERE " + primaryKeyColumn + "=?";
+    // Rows are compared as the text the grid shows, which also absorbs Integer vs Long from different reads
+    private static boolean sameRow(Object[] current, Object[] original) {
+        if (current.length != original.length) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (!text(current[i]).equals(text(original[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String text(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static int indexOfIgnoreCase(List<String> names, String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts many rows with JDBC batching, committing every chunkSize rows.
+     * Rows that fail validation are never sent; a chunk that fails in the
+     * database is rolled back and replayed row by row so that only the bad
+     * rows are reported and the rest are still committed.
+     */
+    public BatchResult insertRecords(String tableName, Vector<String> columnNames,
+                                     List<Vector<String>> rows, int chunkSize) throws SQLException {
+        try (Metrics.Sample sample = INSERT_BATCH_TIMER.time()) {
+            BatchResult result;
+            try {
+                result = executeBatch(tableName, columnNames, rows, chunkSize,
+                    SchemaCache.getSql(Kind.INSERT, tableName, columnNames), PharmacyDAO::bindInsert);
+            } finally {
+                // Earlier chunks may have committed even when a later one throws
+                QueryCache.invalidate(tableName);
+                if (isProductTable(tableName)) {
+                    ProductCatalog.invalidateSnapshot();
+                }
+            }
+            sample.success();
+            return result;
+        }
+    }
+
+    public BatchResult insertRecords(String tableName, Vector<String> columnNames,
+                                     List<Vector<String>> rows) throws SQLException {
+        return insertRecords(tableName, columnNames, rows, DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    /**
+     * Batch counterpart of {@link #updateRecord}: the first column of every
+     * row is the primary key. Rows whose key matches nothing are reported as
+     * failures.
+     */
+    public BatchResult updateRecords(String tableName, Vector<String> columnNames,
+                                     List<Vector<String>> rows, int chunkSize) throws SQLException {
+        try (Metrics.Sample sample = UPDATE_BATCH_TIMER.time()) {
+            BatchResult result;
+            try {
+                result = executeBatch(tableName, columnNames, rows, chunkSize,
+                    SchemaCache.getSql(Kind.UPDATE, tableName, columnNames), PharmacyDAO::bindUpdate);
+            } finally {
+                QueryCache.invalidate(tableName);
+                if (isProductTable(tableName)) {
+                    for (Vector<String> row : rows) {
+                        ProductCatalog.invalidate(row.isEmpty() ? null : row.get(0));
+                    }
+                }
+                if (isOrderTable(tableName)) {
+                    SalesAnalytics.markStale();
+                }
+            }
+            sample.success();
+            return result;
+        }
+    }
+
+    public BatchResult updateRecords(String tableName, Vector<String> columnNames,
+                                     List<Vector<String>> rows) throws SQLException {
+        return updateRecords(tableName, columnNames, rows, DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    private BatchResult executeBatch(String tableName, Vector<String> columnNames, List<Vector<String>> rows,
+                                     int chunkSize, String query, RowBinder binder) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        BatchResult result = new BatchResult(rows.size());
+
+        // Validate everything up front so bad rows never reach the database; big batches use all cores.
+        // Every problem with a row is reported, not just the first.
+        RowValidator validator = RowValidator.forColumns(tableName, columnNames);
+        String[] errors = new String[rows.size()];
+        IntStream indices = IntStream.range(0, rows.size());
+        (rows.size() >= PARALLEL_VALIDATION_ROWS ? indices.parallel() : indices).forEach(i -> {
+            Vector<String> values = rows.get(i);
+            if (values.size() != columnNames.size()) {
+                errors[i] = "Expected " + columnNames.size() + " values but got " + values.size();
+            } else {
+                List<String> rowErrors = validator.validateAll(values);
+                errors[i] = rowErrors.isEmpty() ? null : String.join(" ", rowErrors);
+            }
+        });
+        List<Integer> valid = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (errors[i] != null) {
+                result.recordFailure(i, errors[i]);
+            } else {
+                valid.add(i);
+            }
+        }
+        if (valid.isEmpty()) {
+            return result;
+        }
+
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, primaryKeyValue);
-            pstmt.executeUpdate();
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < valid.size(); from += chunkSize) {
+                    List<Integer> chunk = valid.subList(from, Math.min(from + chunkSize, valid.size()));
+                    for (int rowIndex : chunk) {
+                        binder.bind(pstmt, rows.get(rowIndex));
+                        pstmt.addBatch();
+                    }
+
+                    try {
+                        int[] counts = executeBatch(pstmt, query);
+                        conn.commit();
+                        recordCounts(result, chunk, counts);
+                    } catch (BatchUpdateException e) {
+                        conn.rollback();
+                        pstmt.clearBatch();
+                        executeRowByRow(conn, pstmt, query, rows, chunk, binder, result);
+                    }
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        return result;
+    }
+
+    // Replays a failed chunk one row per transaction to find the rows the database rejects
+    private void executeRowByRow(Connection conn, PreparedStatement pstmt, String query, List<Vector<String>> rows,
+                                 List<Integer> chunk, RowBinder binder, BatchResult result) throws SQLException {
+        for (int rowIndex : chunk) {
+            try {
+                binder.bind(pstmt, rows.get(rowIndex));
+                int count = executeUpdate(pstmt, query);
+                conn.commit();
+                recordCounts(result, List.of(rowIndex), new int[]{count});
+            } catch (SQLException e) {
+                conn.rollback();
+                result.recordFailure(rowIndex, e.getMessage());
+            }
+        }
+    }
+
+    private static void recordCounts(BatchResult result, List<Integer> chunk, int[] counts) {
+        for (int i = 0; i < chunk.size(); i++) {
+            // SUCCESS_NO_INFO is what rewritten multi-row inserts report
+            int count = i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO;
+            if (count == 0) {
+                result.recordFailure(chunk.get(i), "No matching row");
+            } else if (count == Statement.EXECUTE_FAILED) {
+                result.recordFailure(chunk.get(i), "Statement failed");
+            } else {
+                result.recordSuccess(1);
+            }
+        }
+    }
+
+    private static String validate(String tableName, Vector<String> columnNames, Vector<String> values) {
+        return RowValidator.forColumns(tableName, columnNames).validate(values);
+    }
+
+    // Writes to product must reach ProductCatalog so bills never show an old name or price
+    private static boolean isProductTable(String tableName) {
+        return tableName.equalsIgnoreCase(ProductCatalog.TABLE);
+    }
+
+    // New order lines reach SalesAnalytics on their own; edits and deletes make it rebuild
+    private static boolean isOrderTable(String tableName) {
+        return tableName.equalsIgnoreCase("orders") || tableName.equalsIgnoreCase("orderdetails");
+    }
+
+    static void bindInsert(PreparedStatement pstmt, Vector<String> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            pstmt.setString(i + 1, values.get(i));
+        }
+    }
+
+    static void bindUpdate(PreparedStatement pstmt, Vector<String> values) throws SQLException {
+        for (int i = 1; i < values.size(); i++) {
+            pstmt.setString(i, values.get(i));
+        }
+        pstmt.setString(values.size(), values.get(0));
+    }
+
+    /**
+     * True while single-row writes are being journaled because the database
+     * is unreachable; they reach it once it is back.
+     */
+    public boolean isOffline() {
+        WriteJournal journal = journal();
+        return journal != null && journal.isOffline();
+    }
+
+    /**
+     * A connection for a single-row write, or null when the write goes to
+     * the journal: the database cannot be reached, or journaled writes are
+     * still waiting and this one must not overtake them. Only a failure to
+     * connect counts, so nothing of a journaled write reached the database.
+     */
+    private static Connection writeConnection() throws SQLException {
+        WriteJournal journal = journal();
+        if (journal == null) {
+            return DatabaseUtil.getConnection();
+        }
+        if (journal.isOffline()) {
+            return null;
+        }
+        try {
+            return DatabaseUtil.getConnection();
+        } catch (SQLException e) {
+            if (!WriteJournal.isConnectionFailure(e)) {
+                throw e;
+            }
+            journal.markOffline();
+            return null;
+        }
+    }
+
+    private static WriteJournal journal() {
+        try {
+            return WriteJournal.getDefault();
+        } catch (IOException e) {
+            // Without a journal, writes fail as they always did while the database is away
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void journal(WriteJournal.Op op, String tableName, List<String> columnNames, List<String> values)
+            throws SQLException {
+        try {
+            WriteJournal.getDefault().append(op, tableName, columnNames, values);
+        } catch (IOException e) {
+            throw new SQLException("The database is unreachable and the write could not be journaled", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement pstmt, Vector<String> values) throws SQLException;
+    }
+
+    public void deleteRecord(String tableName, String primaryKeyColumn, String primaryKeyValue) throws SQLException {
+        String query = SchemaCache.getSql(Kind.DELETE, tableName, List.of(primaryKeyColumn));
+        try (Metrics.Sample sample = DELETE_TIMER.time();
+             Connection conn = writeConnection()) {
+            if (conn == null) {
+                journal(WriteJournal.Op.DELETE, tableName, List.of(primaryKeyColumn), List.of(primaryKeyValue));
+                sample.success();
+                return;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                pstmt.setString(1, primaryKeyValue);
+                executeUpdate(pstmt, query);
+            }
+            QueryCache.invalidate(tableName);
+            if (isProductTable(tableName)) {
+                ProductCatalog.invalidate(primaryKeyValue);
+            }
+            if (isOrderTable(tableName)) {
+                SalesAnalytics.markStale();
+            }
+            sample.success();
+        }
+    }
+
+    // Statement execution with a per-SQL timer; the query is the text the statement was prepared from.
+    // Updates also keep this process's reads on the primary for a moment, see DatabaseUtil.getReadConnection
+
+    static ResultSet executeQuery(PreparedStatement pstmt, String query) throws SQLException {
+        try (Metrics.Sample sample = Metrics.sqlTimer(query).time()) {
+            ResultSet rs = pstmt.executeQuery();
+            sample.success();
+            return rs;
+        }
+    }
+
+    static ResultSet executeQuery(Statement stmt, String query) throws SQLException {
+        try (Metrics.Sample sample = Metrics.sqlTimer(query).time()) {
+            ResultSet rs = stmt.executeQuery(query);
+            sample.success();
+            return rs;
+        }
+    }
+
+    static int executeUpdate(PreparedStatement pstmt, String query) throws SQLException {
+        try (Metrics.Sample sample = Metrics.sqlTimer(query).time()) {
+            int count = pstmt.executeUpdate();
+            sample.success();
+            return count;
+        } finally {
+            DatabaseUtil.markWritten();
+        }
+    }
+
+    static int[] executeBatch(PreparedStatement pstmt, String query) throws SQLException {
+        try (Metrics.Sample sample = Metrics.sqlTimer(query).time()) {
+            int[] counts = pstmt.executeBatch();
+            sample.success();
+            return counts;
+        } finally {
+            DatabaseUtil.markWritten();
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,324 @@
+package dao;
+
+import util.DatabaseUtil;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Read-through, size-bounded cache of the product catalog.
+ *
+ * Product name and price lookups (used by bill rendering) are served from
+ * an LRU map and fetched in bulk on a miss. A whole-table snapshot serves
+ * catalog browsing while the table is no larger than the cache.
+ *
+ * PharmacyDAO writes to product evict the affected entries immediately.
+ * Changes made by other clients are caught by a background version check
+ * on count, max id and checksums of prices and names, which clears the
+ * cache when they move. The browsing snapshot also carries non-price columns such as stock,
+ * so it additionally expires after the check interval. Everything is read
+ * from the primary, never a replica: a refill after the version check
+ * must see at least the state that triggered it.
+ */
+public final class ProductCatalog {
+    static final String TABLE = "product";
+    private static final String ID_COLUMN = "Product_ID";
+
+    private static final int MAX_SIZE = Integer.getInteger("pharma.catalog.maxSize", 10_000);
+    private static final long CHECK_INTERVAL_SEC = Long.getLong("pharma.catalog.checkIntervalSec", 30);
+
+    private static final String SELECT_BY_IDS = "SELECT Product_ID, Name, Price FROM product WHERE Product_ID IN (";
+    private static final String SELECT_ALL = "SELECT * FROM product ORDER BY Product_ID";
+    // %s is the database's hash of a string, so renames move the version as well as price changes
+    private static final String VERSION_QUERY = "SELECT COUNT(*), COALESCE(MAX(Product_ID), 0), " +
+                                                "COALESCE(SUM(Product_ID * Price), 0), " +
+                                                "COALESCE(SUM(Product_ID * %s), 0) FROM product";
+    // Bulk lookups are split so the IN list stays a reasonable size
+    private static final int MAX_IN_LIST = 500;
+
+    public record Product(int id, String name, BigDecimal price) {
+    }
+
+    private record Snapshot(Vector<String> columnNames, List<Object[]> rows, long loadedAt) {
+    }
+
+    private static final Map<Integer, Product> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Product> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    private static volatile Snapshot snapshot;
+    private static volatile String version;
+    private static volatile String versionQuery;
+    // Bumped by every invalidation before it clears anything, so a read that overlapped one does not store its rows
+    private static final AtomicLong generation = new AtomicLong();
+    private static ScheduledExecutorService checker;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private ProductCatalog() {
+    }
+
+    public static Product get(int productId) throws SQLException {
+        return getAll(List.of(productId)).get(productId);
+    }
+
+    /** Looks up several products, fetching all misses with one query. Unknown ids are absent from the result. */
+    public static Map<Integer, Product> getAll(Collection<Integer> productIds) throws SQLException {
+        return getAll(null, productIds);
+    }
+
+    /**
+     * Same as getAll(productIds), reading misses on the caller's connection
+     * so a caller already holding one does not take a second from the pool.
+     */
+    public static Map<Integer, Product> getAll(Connection conn, Collection<Integer> productIds) throws SQLException {
+        startVersionCheck();
+        Map<Integer, Product> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        synchronized (CACHE) {
+            for (Integer id : productIds) {
+                Product product = CACHE.get(id);
+                if (product != null) {
+                    found.put(id, product);
+                } else if (!found.containsKey(id) && !missing.contains(id)) {
+                    missing.add(id);
+                }
+            }
+        }
+        hits.add(found.size());
+        misses.add(missing.size());
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        long readGeneration = generation.get();
+        Connection owned = conn == null ? DatabaseUtil.getConnection() : null;
+        try {
+            Connection db = owned != null ? owned : conn;
+            for (int from = 0; from < missing.size(); from += MAX_IN_LIST) {
+                List<Integer> ids = missing.subList(from, Math.min(from + MAX_IN_LIST, missing.size()));
+                StringBuilder query = new StringBuilder(SELECT_BY_IDS.length() + ids.size() * 2 + 1).append(SELECT_BY_IDS);
+                for (int i = 0; i < ids.size(); i++) {
+                    query.append(i == 0 ? "?" : ",?");
+                }
+                query.append(")");
+
+                try (PreparedStatement pstmt = db.prepareStatement(query.toString())) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        pstmt.setInt(i + 1, ids.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Product product = new Product(rs.getInt(1), rs.getString(2), rs.getBigDecimal(3));
+                            found.put(product.id(), product);
+                            synchronized (CACHE) {
+                                if (generation.get() == readGeneration) {
+                                    CACHE.put(product.id(), product);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (owned != null) {
+                owned.close();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The whole product table for browsing, or null when it has more rows
+     * than the cache may hold and should be paged from the database instead.
+     */
+    public static DefaultTableModel getTableModel() throws SQLException {
+        startVersionCheck();
+        Snapshot current = snapshot;
+        long maxAge = TimeUnit.SECONDS.toMillis(CHECK_INTERVAL_SEC);
+        if (current == null || System.currentTimeMillis() - current.loadedAt() > maxAge) {
+            misses.increment();
+            current = loadSnapshot();
+            if (current == null) {
+                return null;
+            }
+        } else {
+            hits.increment();
+        }
+
+        Vector<Vector<Object>> data = new Vector<>(current.rows().size());
+        for (Object[] row : current.rows()) {
+            data.add(new Vector<>(Arrays.asList(row)));
+        }
+        return new DefaultTableModel(data, new Vector<>(current.columnNames()));
+    }
+
+    private static Snapshot loadSnapshot() throws SQLException {
+        long readGeneration = generation.get();
+        List<Object[]> rows = new ArrayList<>();
+        Vector<String> columnNames = new Vector<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setMaxRows(MAX_SIZE + 1);
+            try (ResultSet rs = stmt.executeQuery(SELECT_ALL)) {
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int cols = rsmd.getColumnCount();
+                int idIndex = -1, nameIndex = -1, priceIndex = -1;
+                for (int i = 1; i <= cols; i++) {
+                    String column = rsmd.getColumnName(i);
+                    columnNames.add(column);
+                    if (column.equalsIgnoreCase(ID_COLUMN)) idIndex = i - 1;
+                    if (column.equalsIgnoreCase("Name")) nameIndex = i - 1;
+                    if (column.equalsIgnoreCase("Price")) priceIndex = i - 1;
+                }
+
+                while (rs.next()) {
+                    Object[] row = new Object[cols];
+                    for (int i = 0; i < cols; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+
+                if (rows.size() > MAX_SIZE) {
+                    snapshot = null;
+                    return null;
+                }
+
+                // A full read is also a cheap way to warm the lookup cache
+                if (idIndex >= 0 && nameIndex >= 0 && priceIndex >= 0) {
+                    synchronized (CACHE) {
+                        if (generation.get() != readGeneration) {
+                            return new Snapshot(columnNames, rows, System.currentTimeMillis());
+                        }
+                        for (Object[] row : rows) {
+                            int id = ((Number) row[idIndex]).intValue();
+                            Object price = row[priceIndex];
+                            CACHE.put(id, new Product(id, (String) row[nameIndex],
+                                price instanceof BigDecimal decimal ? decimal
+                                    : price == null ? null : new BigDecimal(price.toString())));
+                        }
+                    }
+                }
+            }
+        }
+        Snapshot loaded = new Snapshot(columnNames, rows, System.currentTimeMillis());
+        synchronized (CACHE) {
+            // Served to this caller either way, but kept only if nothing was invalidated meanwhile
+            if (generation.get() == readGeneration) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /** Called after a product was added: cached lookups stay valid, the browsing snapshot does not. */
+    public static void invalidateSnapshot() {
+        generation.incrementAndGet();
+        synchronized (CACHE) {
+            snapshot = null;
+        }
+    }
+
+    /** Called after a product was changed or removed; a null key evicts everything. */
+    public static void invalidate(Object productId) {
+        if (productId == null) {
+            invalidateAll();
+            return;
+        }
+        try {
+            int id = Integer.parseInt(productId.toString().trim());
+            generation.incrementAndGet();
+            synchronized (CACHE) {
+                snapshot = null;
+                CACHE.remove(id);
+            }
+        } catch (NumberFormatException e) {
+            invalidateAll();
+        }
+    }
+
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (CACHE) {
+            snapshot = null;
+            CACHE.clear();
+        }
+    }
+
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    private static synchronized void startVersionCheck() {
+        if (checker != null || CHECK_INTERVAL_SEC <= 0) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-catalog-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(ProductCatalog::checkVersion, CHECK_INTERVAL_SEC, CHECK_INTERVAL_SEC,
+            TimeUnit.SECONDS);
+    }
+
+    // Clears the cache when the table changed behind our back
+    static void checkVersion() {
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(versionQuery(conn))) {
+            if (rs.next()) {
+                String current = rs.getLong(1) + ":" + rs.getLong(2) + ":" + rs.getBigDecimal(3) + ":" +
+                                 rs.getBigDecimal(4);
+                String previous = version;
+                version = current;
+                if (previous != null && !previous.equals(current)) {
+                    invalidateAll();
+                }
+            }
+        } catch (SQLException e) {
+            // Keep serving the cache, the next check retries
+            e.printStackTrace();
+        }
+    }
+
+    private static String versionQuery(Connection conn) throws SQLException {
+        String query = versionQuery;
+        if (query == null) {
+            String url = conn.getMetaData().getURL();
+            // Without a known hash function the name length still catches most renames
+            String nameHash = url.startsWith("jdbc:mysql:") ? "CRC32(Name)"
+                : url.startsWith("jdbc:h2:") ? "ORA_HASH(Name)"
+                : "LENGTH(Name)";
+            query = String.format(VERSION_QUERY, nameHash);
+            versionQuery = query;
+        }
+        return query;
+    }
+}
@@ -0,0 +1,267 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Process-wide cache of read query results, keyed by the SQL text and its
+ * parameters, so the reads the UI and the server repeat (table names, whole
+ * small tables, bill headers, searches) stop reaching the database.
+ *
+ * Each result names the tables it was read from. Writes through the DAO
+ * invalidate those tables at once; writes made elsewhere, by another
+ * counter for instance, are only seen once an entry's time to live runs
+ * out (-Dpharma.queryCache.ttlMs, default 30 s) or a change feed notices
+ * them. A read that overlaps a write to one of its tables is not cached.
+ * Results are held in flat arrays and the least recently used ones are
+ * dropped once the estimated size passes -Dpharma.queryCache.maxMb
+ * (default 32). Either setting at 0 turns the cache off.
+ */
+public final class QueryCache {
+    private static final long TTL_NANOS = Long.getLong("pharma.queryCache.ttlMs", 30_000) * 1_000_000;
+    private static final long MAX_BYTES = Long.getLong("pharma.queryCache.maxMb", 32) << 20;
+    // A result bigger than this share of the budget is not worth evicting everything else for
+    private static final long MAX_ENTRY_BYTES = MAX_BYTES / 4;
+    public static final boolean ENABLED = TTL_NANOS > 0 && MAX_BYTES > 0;
+
+    public record Stats(long hits, long misses, long evictions, long invalidations, int entries, long bytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /** Reads a result on a miss. */
+    @FunctionalInterface
+    public interface Loader {
+        Result load() throws SQLException;
+    }
+
+    private record Key(String sql, List<Object> params) {
+    }
+
+    private record Entry(Result result, Set<String> tables, long expiresAt, long bytes) {
+    }
+
+    // Guarded by the class lock; iteration order is least recently used first
+    private static final LinkedHashMap<Key, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75f, true);
+    // Bumped by every invalidation of a table, so a read can tell a write overlapped it
+    private static final Map<String, Long> VERSIONS = new HashMap<>();
+    private static long bytes;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long invalidations;
+
+    private QueryCache() {
+    }
+
+    /**
+     * The cached result of the query, or the loader's result, which is
+     * cached when no write to the tables happened meanwhile. tables are the
+     * tables the query reads, in any case.
+     */
+    public static Result get(String sql, List<?> params, Set<String> tables, Loader loader) throws SQLException {
+        if (!ENABLED) {
+            return loader.load();
+        }
+        Key key = new Key(sql, Collections.unmodifiableList(Arrays.asList(params.toArray())));
+        long[] versions;
+        synchronized (QueryCache.class) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt() < 0) {
+                    hits++;
+                    return entry.result();
+                }
+                remove(key);
+            }
+            misses++;
+            versions = versions(tables);
+        }
+
+        Result result = loader.load();
+        long size = result.estimatedBytes() + 2L * sql.length() + 64;
+        synchronized (QueryCache.class) {
+            if (size <= MAX_ENTRY_BYTES && Arrays.equals(versions, versions(tables))) {
+                Entry old = ENTRIES.put(key, new Entry(result, normalize(tables), System.nanoTime() + TTL_NANOS, size));
+                bytes += size - (old != null ? old.bytes() : 0);
+                evict();
+            }
+        }
+        return result;
+    }
+
+    /** Drops every result read from the table; called after each write to it. */
+    public static synchronized void invalidate(String tableName) {
+        String table = tableName.toLowerCase();
+        VERSIONS.merge(table, 1L, Long::sum);
+        Iterator<Map.Entry<Key, Entry>> it = ENTRIES.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.tables().contains(table)) {
+                it.remove();
+                bytes -= entry.bytes();
+                invalidations++;
+            }
+        }
+    }
+
+    public static synchronized void invalidateAll() {
+        for (Map.Entry<String, Long> version : VERSIONS.entrySet()) {
+            version.setValue(version.getValue() + 1);
+        }
+        invalidations += ENTRIES.size();
+        ENTRIES.clear();
+        bytes = 0;
+    }
+
+    public static synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, ENTRIES.size(), bytes);
+    }
+
+    // Called with the lock held
+    private static void remove(Key key) {
+        Entry entry = ENTRIES.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes();
+        }
+    }
+
+    // Called with the lock held
+    private static void evict() {
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            bytes -= it.next().bytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // Called with the lock held
+    private static long[] versions(Set<String> tables) {
+        long[] versions = new long[tables.size()];
+        int i = 0;
+        for (String table : tables) {
+            versions[i++] = VERSIONS.getOrDefault(table.toLowerCase(), 0L);
+        }
+        return versions;
+    }
+
+    private static Set<String> normalize(Set<String> tables) {
+        Set<String> normalized = new HashSet<>();
+        for (String table : tables) {
+            normalized.add(table.toLowerCase());
+        }
+        return normalized;
+    }
+
+    /**
+     * Rows of a query held in one flat array, row after row, rather than a
+     * Vector per row. Shared between callers, so it is never modified; the
+     * table model handed out is a fresh copy.
+     */
+    public static final class Result {
+        private final String[] columnNames;
+        private final Object[] values;
+        private final int rowCount;
+
+        public Result(String[] columnNames, Object[] values) {
+            this.columnNames = columnNames;
+            this.values = values;
+            this.rowCount = columnNames.length == 0 ? 0 : values.length / columnNames.length;
+        }
+
+        /** Reads the rest of the result set. */
+        public static Result read(ResultSet rs) throws SQLException {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int cols = rsmd.getColumnCount();
+            String[] columnNames = new String[cols];
+            for (int i = 0; i < cols; i++) {
+                columnNames[i] = rsmd.getColumnName(i + 1);
+            }
+            List<Object> values = new ArrayList<>();
+            while (rs.next()) {
+                for (int i = 1; i <= cols; i++) {
+                    values.add(rs.getObject(i));
+                }
+            }
+            return new Result(columnNames, values.toArray());
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        public Object getValue(int row, int column) {
+            return values[row * columnNames.length + column];
+        }
+
+        public DefaultTableModel toTableModel() {
+            int cols = columnNames.length;
+            Vector<Vector<Object>> data = new Vector<>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                Vector<Object> rowData = new Vector<>(cols);
+                for (int i = 0; i < cols; i++) {
+                    rowData.add(values[row * cols + i]);
+                }
+                data.add(rowData);
+            }
+            return new DefaultTableModel(data, new Vector<>(Arrays.asList(columnNames)));
+        }
+
+        // Rough heap footprint, enough to keep the cache near its budget
+        long estimatedBytes() {
+            long size = 48 + 16 + 4L * values.length;
+            for (String name : columnNames) {
+                size += 40 + name.length();
+            }
+            for (Object value : values) {
+                size += sizeOf(value);
+            }
+            return size;
+        }
+
+        private static long sizeOf(Object value) {
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof String s) {
+                return 40 + 2L * s.length();
+            }
+            if (value instanceof BigDecimal) {
+                return 40;
+            }
+            if (value instanceof byte[] b) {
+                return 16 + b.length;
+            }
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte
+                    || value instanceof Boolean || value instanceof Float) {
+                return 16;
+            }
+            return 32;
+        }
+    }
+}
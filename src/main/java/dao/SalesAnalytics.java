@@ -0,0 +1,440 @@
+package dao;
+
+import util.DatabaseUtil;
+import util.Metrics;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sales and inventory figures kept in memory, so dashboards never scan the
+ * order history: units and revenue per product per day, revenue per
+ * customer, and current stock.
+ *
+ * Order lines are folded in incrementally, in OrderDetail_ID order from a
+ * high-watermark. Ids are handed out before their transaction commits, so
+ * a line can appear below the watermark after it moved on; each refresh
+ * therefore rereads a window of recent ids and skips the ones it already
+ * has. Edits and deletes of existing orders cannot be applied that way:
+ * they mark the figures stale (see {@link #markStale()}) and the next
+ * refresh rebuilds them, scanning date partitions in parallel on a
+ * fork/join pool. A full rebuild also runs periodically as a safety net.
+ */
+public final class SalesAnalytics {
+    // Each can be overridden with -Dpharma.analytics.<name>=<value>
+    private static final long REFRESH_INTERVAL_SEC = Long.getLong("pharma.analytics.refreshIntervalSec", 30);
+    private static final long REBUILD_INTERVAL_MIN = Long.getLong("pharma.analytics.rebuildIntervalMin", 60);
+    private static final int REPLAY_WINDOW = Integer.getInteger("pharma.analytics.replayWindow", 1000);
+    private static final int PARTITION_DAYS = Integer.getInteger("pharma.analytics.partitionDays", 31);
+    private static final int PARALLELISM = Integer.getInteger("pharma.analytics.parallelism", 4);
+
+    private static final Metrics.Timer REFRESH_TIMER = Metrics.timer("analytics.refresh");
+    private static final Metrics.Timer REBUILD_TIMER = Metrics.timer("analytics.rebuild");
+
+    private static final String LINES = "SELECT od.OrderDetail_ID, o.Customer_ID, o.Order_Date, od.Product_ID, " +
+                                        "od.Quantity, COALESCE(od.Subtotal, od.PriceAtPurchase * od.Quantity) " +
+                                        "FROM orderdetails od JOIN orders o ON o.Order_ID = od.Order_ID ";
+    static final String LINES_AFTER = LINES + "WHERE od.OrderDetail_ID > ? ORDER BY od.OrderDetail_ID";
+    static final String LINES_IN_RANGE = LINES + "WHERE o.Order_Date >= ? AND o.Order_Date < ? " +
+                                         "AND od.OrderDetail_ID <= ?";
+    static final String LINES_UNDATED = LINES + "WHERE o.Order_Date IS NULL AND od.OrderDetail_ID <= ?";
+    static final String DATE_RANGE = "SELECT MIN(Order_Date), MAX(Order_Date) FROM orders";
+    static final String MAX_LINE_ID = "SELECT COALESCE(MAX(OrderDetail_ID), 0) FROM orderdetails";
+    static final String STOCK = "SELECT Product_ID, Stock FROM product";
+
+    public record DailySales(LocalDate date, long units, BigDecimal revenue) {
+    }
+
+    public record ProductSales(int productId, String name, long units, BigDecimal revenue) {
+    }
+
+    public record CustomerRevenue(int customerId, long units, BigDecimal revenue) {
+    }
+
+    public record StockLevel(int productId, String name, int stock) {
+    }
+
+    private static final Object REFRESH_LOCK = new Object();
+    private static volatile Aggregates live;
+    private static volatile Map<Integer, Integer> stock = Map.of();
+    private static volatile boolean stale = true;
+    private static volatile Instant refreshedAt;
+    private static long rebuiltAt;
+    private static ScheduledExecutorService refresher;
+    private static final ForkJoinPool SCAN_POOL = new ForkJoinPool(PARALLELISM);
+
+    private SalesAnalytics() {
+    }
+
+    /** Units and revenue per day from 'from' to 'to' inclusive, days without sales left out. */
+    public static List<DailySales> getDailySales(LocalDate from, LocalDate to) throws SQLException {
+        Aggregates current = ensureLoaded();
+        List<DailySales> days = new ArrayList<>();
+        synchronized (current) {
+            for (Map.Entry<LocalDate, Map<Integer, Tally>> day : current.byDay.subMap(from, true, to, true).entrySet()) {
+                Tally total = new Tally();
+                day.getValue().values().forEach(total::add);
+                days.add(new DailySales(day.getKey(), total.units, total.revenue));
+            }
+        }
+        return days;
+    }
+
+    /** The products with the highest revenue between the dates (inclusive), best first. */
+    public static List<ProductSales> getTopProducts(LocalDate from, LocalDate to, int limit) throws SQLException {
+        Aggregates current = ensureLoaded();
+        Map<Integer, Tally> byProduct = new HashMap<>();
+        synchronized (current) {
+            for (Map<Integer, Tally> day : current.byDay.subMap(from, true, to, true).values()) {
+                day.forEach((productId, tally) -> byProduct.computeIfAbsent(productId, _ -> new Tally()).add(tally));
+            }
+        }
+        List<Map.Entry<Integer, Tally>> top = top(byProduct, limit);
+        Map<Integer, ProductCatalog.Product> products = ProductCatalog.getAll(top.stream().map(Map.Entry::getKey).toList());
+        List<ProductSales> result = new ArrayList<>(top.size());
+        for (Map.Entry<Integer, Tally> entry : top) {
+            ProductCatalog.Product product = products.get(entry.getKey());
+            result.add(new ProductSales(entry.getKey(), product != null ? product.name() : null,
+                entry.getValue().units, entry.getValue().revenue));
+        }
+        return result;
+    }
+
+    /** The customers with the highest revenue over the whole history, best first. */
+    public static List<CustomerRevenue> getTopCustomers(int limit) throws SQLException {
+        Aggregates current = ensureLoaded();
+        List<Map.Entry<Integer, Tally>> top;
+        synchronized (current) {
+            top = top(current.byCustomer, limit);
+        }
+        List<CustomerRevenue> result = new ArrayList<>(top.size());
+        for (Map.Entry<Integer, Tally> entry : top) {
+            result.add(new CustomerRevenue(entry.getKey(), entry.getValue().units, entry.getValue().revenue));
+        }
+        return result;
+    }
+
+    /** Products with less than threshold in stock as of the last refresh, lowest first. */
+    public static List<StockLevel> getLowStock(int threshold) throws SQLException {
+        ensureLoaded();
+        List<Map.Entry<Integer, Integer>> low = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : stock.entrySet()) {
+            if (entry.getValue() < threshold) {
+                low.add(entry);
+            }
+        }
+        low.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        Map<Integer, ProductCatalog.Product> products = ProductCatalog.getAll(low.stream().map(Map.Entry::getKey).toList());
+        List<StockLevel> result = new ArrayList<>(low.size());
+        for (Map.Entry<Integer, Integer> entry : low) {
+            ProductCatalog.Product product = products.get(entry.getKey());
+            result.add(new StockLevel(entry.getKey(), product != null ? product.name() : null, entry.getValue()));
+        }
+        return result;
+    }
+
+    /** When the figures were last brought up to date, null before the first load. */
+    public static Instant getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    /** Called after existing orders or order lines were changed or removed. */
+    public static void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Brings the figures up to date: folds in new order lines, or rebuilds
+     * everything when they are stale or the rebuild interval has passed.
+     * Stock levels are reread either way, restocking does not go through
+     * orders.
+     */
+    public static void refresh() throws SQLException {
+        synchronized (REFRESH_LOCK) {
+            boolean due = REBUILD_INTERVAL_MIN > 0
+                && System.nanoTime() - rebuiltAt > TimeUnit.MINUTES.toNanos(REBUILD_INTERVAL_MIN);
+            if (live == null || stale || due) {
+                rebuild();
+            } else {
+                try (Metrics.Sample sample = REFRESH_TIMER.time();
+                     Connection conn = DatabaseUtil.getConnection()) {
+                    applyNewLines(conn, live);
+                    stock = readStock(conn);
+                    sample.success();
+                }
+            }
+            refreshedAt = Instant.now();
+        }
+    }
+
+    private static Aggregates ensureLoaded() throws SQLException {
+        startRefresher();
+        Aggregates current = live;
+        if (current == null) {
+            synchronized (REFRESH_LOCK) {
+                if (live == null) {
+                    refresh();
+                }
+                current = live;
+            }
+        }
+        return current;
+    }
+
+    // Rereads the window below the watermark as well as everything above it
+    private static void applyNewLines(Connection conn, Aggregates target) throws SQLException {
+        long from;
+        synchronized (target) {
+            from = Math.max(0, target.watermark - REPLAY_WINDOW);
+        }
+        List<Line> lines = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(LINES_AFTER)) {
+            pstmt.setLong(1, from);
+            try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, LINES_AFTER)) {
+                while (rs.next()) {
+                    lines.add(Line.read(rs));
+                }
+            }
+        }
+        synchronized (target) {
+            for (Line line : lines) {
+                if (!target.recent.contains(line.id())) {
+                    target.add(line);
+                    target.recent.add(line.id());
+                    target.watermark = Math.max(target.watermark, line.id());
+                }
+            }
+            target.recent.headSet(target.watermark - REPLAY_WINDOW, true).clear();
+        }
+    }
+
+    private static void rebuild() throws SQLException {
+        try (Metrics.Sample sample = REBUILD_TIMER.time()) {
+            // Clear first: a change made during the scan marks it stale again
+            stale = false;
+            long mark;
+            LocalDate first;
+            LocalDate last;
+            Map<Integer, Integer> levels;
+            Aggregates rebuilt;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    try (ResultSet rs = PharmacyDAO.executeQuery(stmt, MAX_LINE_ID)) {
+                        rs.next();
+                        mark = rs.getLong(1);
+                    }
+                    try (ResultSet rs = PharmacyDAO.executeQuery(stmt, DATE_RANGE)) {
+                        rs.next();
+                        Date min = rs.getDate(1);
+                        Date max = rs.getDate(2);
+                        first = min != null ? min.toLocalDate() : null;
+                        last = max != null ? max.toLocalDate() : null;
+                    }
+                }
+                levels = readStock(conn);
+
+                rebuilt = new Aggregates();
+                try (PreparedStatement pstmt = conn.prepareStatement(LINES_UNDATED)) {
+                    pstmt.setLong(1, mark);
+                    scan(pstmt, LINES_UNDATED, rebuilt, mark);
+                }
+            }
+
+            if (first != null) {
+                try {
+                    rebuilt.merge(SCAN_POOL.invoke(new RangeScan(first, last.plusDays(1), mark)));
+                } catch (ScanFailure e) {
+                    throw e.getCause();
+                }
+            }
+            rebuilt.watermark = mark;
+
+            // Lines committed since the mark, or below it but after the scan read past them
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                applyNewLines(conn, rebuilt);
+            }
+            live = rebuilt;
+            stock = levels;
+            rebuiltAt = System.nanoTime();
+            sample.success();
+        }
+    }
+
+    private static void scan(PreparedStatement pstmt, String query, Aggregates target, long mark)
+            throws SQLException {
+        try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, query)) {
+            while (rs.next()) {
+                Line line = Line.read(rs);
+                target.add(line);
+                if (line.id() > mark - REPLAY_WINDOW) {
+                    target.recent.add(line.id());
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> readStock(Connection conn) throws SQLException {
+        Map<Integer, Integer> levels = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = PharmacyDAO.executeQuery(stmt, STOCK)) {
+            while (rs.next()) {
+                levels.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return levels;
+    }
+
+    private static <K> List<Map.Entry<K, Tally>> top(Map<K, Tally> tallies, int limit) {
+        return tallies.entrySet().stream()
+            .sorted(Comparator.comparing((Map.Entry<K, Tally> entry) -> entry.getValue().revenue).reversed())
+            .limit(limit)
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue().copy()))
+            .toList();
+    }
+
+    private static synchronized void startRefresher() {
+        if (refresher != null || REFRESH_INTERVAL_SEC <= 0) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sales-analytics-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                // Keep serving the last figures, the next run retries
+                e.printStackTrace();
+            }
+        }, REFRESH_INTERVAL_SEC, REFRESH_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    // Scans [from, to) of order dates, splitting it in halves down to PARTITION_DAYS
+    private static final class RangeScan extends RecursiveTask<Aggregates> {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long mark;
+
+        RangeScan(LocalDate from, LocalDate to, long mark) {
+            this.from = from;
+            this.to = to;
+            this.mark = mark;
+        }
+
+        @Override
+        protected Aggregates compute() {
+            long days = ChronoUnit.DAYS.between(from, to);
+            if (days > PARTITION_DAYS) {
+                LocalDate middle = from.plusDays(days / 2);
+                RangeScan left = new RangeScan(from, middle, mark);
+                left.fork();
+                Aggregates result = new RangeScan(middle, to, mark).compute();
+                result.merge(left.join());
+                return result;
+            }
+
+            Aggregates partial = new Aggregates();
+            try (Connection conn = DatabaseUtil.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(LINES_IN_RANGE)) {
+                pstmt.setDate(1, Date.valueOf(from));
+                pstmt.setDate(2, Date.valueOf(to));
+                pstmt.setLong(3, mark);
+                scan(pstmt, LINES_IN_RANGE, partial, mark);
+            } catch (SQLException e) {
+                throw new ScanFailure(e);
+            }
+            return partial;
+        }
+    }
+
+    private static final class ScanFailure extends RuntimeException {
+        ScanFailure(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private record Line(long id, int customerId, LocalDate date, int productId, int quantity, BigDecimal amount) {
+        static Line read(ResultSet rs) throws SQLException {
+            Date date = rs.getDate(3);
+            BigDecimal amount = rs.getBigDecimal(6);
+            return new Line(rs.getLong(1), rs.getInt(2), date != null ? date.toLocalDate() : null,
+                rs.getInt(4), rs.getInt(5), amount != null ? amount : BigDecimal.ZERO);
+        }
+    }
+
+    private static final class Tally {
+        long units;
+        BigDecimal revenue = BigDecimal.ZERO;
+
+        void add(int quantity, BigDecimal amount) {
+            units += quantity;
+            revenue = revenue.add(amount);
+        }
+
+        void add(Tally other) {
+            units += other.units;
+            revenue = revenue.add(other.revenue);
+        }
+
+        Tally copy() {
+            Tally copy = new Tally();
+            copy.add(this);
+            return copy;
+        }
+    }
+
+    // One set of figures; the live one is guarded by its own monitor
+    private static final class Aggregates {
+        final NavigableMap<LocalDate, Map<Integer, Tally>> byDay = new TreeMap<>();
+        final Map<Integer, Tally> byCustomer = new HashMap<>();
+        // Line ids within the replay window that are already counted
+        final TreeSet<Long> recent = new TreeSet<>();
+        long watermark;
+
+        void add(Line line) {
+            if (line.date() != null) {
+                byDay.computeIfAbsent(line.date(), _ -> new HashMap<>())
+                    .computeIfAbsent(line.productId(), _ -> new Tally())
+                    .add(line.quantity(), line.amount());
+            }
+            byCustomer.computeIfAbsent(line.customerId(), _ -> new Tally()).add(line.quantity(), line.amount());
+        }
+
+        void merge(Aggregates other) {
+            other.byDay.forEach((date, products) -> {
+                Map<Integer, Tally> day = byDay.computeIfAbsent(date, _ -> new HashMap<>());
+                products.forEach((productId, tally) -> day.computeIfAbsent(productId, _ -> new Tally()).add(tally));
+            });
+            other.byCustomer.forEach((customerId, tally) ->
+                byCustomer.computeIfAbsent(customerId, _ -> new Tally()).add(tally));
+            recent.addAll(other.recent);
+        }
+    }
+}
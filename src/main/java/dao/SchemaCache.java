@@ -0,0 +1,141 @@
+package dao;
+
+import util.DatabaseUtil;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of table metadata and of the SQL text the DAO generates
+ * from it. Metadata is read from DatabaseMetaData once per table; the SQL for
+ * a given statement kind, table and column list is built once and reused.
+ * Call {@link #invalidate(String)} after altering a table.
+ */
+public final class SchemaCache {
+    public enum Kind {
+        INSERT, UPDATE, DELETE, SELECT_ROW, SELECT_ROW_FOR_UPDATE, SELECT_ALL, SELECT_FIRST_PAGE, SELECT_PAGE_FROM,
+        SELECT_PAGE_AFTER, SELECT_KEY_AT, SELECT_RANGE, SELECT_CHANGED_SINCE, COUNT, SUMMARY,
+        SEARCH_PREFIX, SEARCH_EXACT, SEARCH_CONTAINS
+    }
+
+    private record SqlKey(Kind kind, String table, List<String> columns) {
+    }
+
+    private static final Map<String, TableMetadata> METADATA = new ConcurrentHashMap<>();
+    private static final Map<SqlKey, String> SQL = new ConcurrentHashMap<>();
+
+    private SchemaCache() {
+    }
+
+    public static TableMetadata getMetadata(String tableName) throws SQLException {
+        String key = tableName.toLowerCase();
+        TableMetadata metadata = METADATA.get(key);
+        if (metadata == null) {
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                metadata = TableMetadata.load(conn, tableName);
+            }
+            METADATA.putIfAbsent(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the SQL for the statement kind. columns are the bound columns
+     * for INSERT/UPDATE (key first for UPDATE), the searched columns for
+     * SEARCH_*, the key and optionally a last-modified column for SUMMARY,
+     * the last-modified column for SELECT_CHANGED_SINCE and the key column
+     * for the others; the list is copied only when the statement is first
+     * built.
+     */
+    public static String getSql(Kind kind, String tableName, List<String> columns) {
+        SqlKey key = new SqlKey(kind, tableName, columns);
+        String sql = SQL.get(key);
+        if (sql == null) {
+            sql = build(kind, tableName, columns);
+            SQL.putIfAbsent(new SqlKey(kind, tableName, List.copyOf(columns)), sql);
+        }
+        return sql;
+    }
+
+    public static void invalidate(String tableName) {
+        METADATA.remove(tableName.toLowerCase());
+        SQL.keySet().removeIf(key -> key.table().equalsIgnoreCase(tableName));
+    }
+
+    public static void invalidateAll() {
+        METADATA.clear();
+        SQL.clear();
+    }
+
+    private static String build(Kind kind, String tableName, List<String> columns) {
+        StringBuilder query = new StringBuilder();
+        switch (kind) {
+            case INSERT -> {
+                query.append("INSERT INTO ").append(tableName).append(" (");
+                query.append(String.join(",", columns));
+                query.append(") VALUES (");
+                for (int i = 0; i < columns.size(); i++) {
+                    query.append(i < columns.size() - 1 ? "?," : "?");
+                }
+                query.append(")");
+            }
+            case UPDATE -> {
+                query.append("UPDATE ").append(tableName).append(" SET ");
+                for (int i = 1; i < columns.size(); i++) {
+                    query.append(columns.get(i)).append("=?");
+                    if (i < columns.size() - 1) query.append(", ");
+                }
+                query.append(" WHERE ").append(columns.get(0)).append("=?");
+            }
+            case DELETE -> query.append("DELETE FROM ").append(tableName)
+                .append(" WHERE ").append(columns.get(0)).append("=?");
+            case SELECT_ROW, SELECT_ROW_FOR_UPDATE -> query.append("SELECT * FROM ").append(tableName)
+                .append(" WHERE ").append(columns.get(0)).append("=?")
+                .append(kind == Kind.SELECT_ROW_FOR_UPDATE ? " FOR UPDATE" : "");
+            case SELECT_ALL -> query.append("SELECT * FROM ").append(tableName);
+            case SELECT_FIRST_PAGE -> query.append("SELECT * FROM ").append(tableName)
+                .append(" ORDER BY ").append(columns.get(0)).append(" LIMIT ?");
+            case SELECT_PAGE_FROM, SELECT_PAGE_AFTER -> query.append("SELECT * FROM ").append(tableName)
+                .append(" WHERE ").append(columns.get(0)).append(kind == Kind.SELECT_PAGE_FROM ? " >= ?" : " > ?")
+                .append(" ORDER BY ").append(columns.get(0)).append(" LIMIT ?");
+            case SELECT_KEY_AT -> query.append("SELECT ").append(columns.get(0)).append(" FROM ").append(tableName)
+                .append(" ORDER BY ").append(columns.get(0)).append(" LIMIT 1 OFFSET ?");
+            case SELECT_RANGE -> query.append("SELECT * FROM ").append(tableName)
+                .append(" WHERE ").append(columns.get(0)).append(" BETWEEN ? AND ?")
+                .append(" ORDER BY ").append(columns.get(0));
+            case SELECT_CHANGED_SINCE -> query.append("SELECT * FROM ").append(tableName)
+                .append(" WHERE ").append(columns.get(0)).append(" >= ?")
+                .append(" ORDER BY ").append(columns.get(0)).append(" LIMIT ?");
+            case COUNT -> query.append("SELECT COUNT(*) FROM ").append(tableName);
+            case SUMMARY -> {
+                query.append("SELECT COUNT(*)");
+                for (String column : columns) {
+                    query.append(", MAX(").append(column).append(")");
+                }
+                query.append(" FROM ").append(tableName);
+            }
+            case SEARCH_PREFIX, SEARCH_EXACT -> {
+                // Prefix LIKE and equality can both use an index on the column, hint it when there is one
+                query.append("SELECT * FROM ").append(tableName);
+                TableMetadata metadata = METADATA.get(tableName.toLowerCase());
+                String index = metadata != null ? metadata.getIndexOn(columns.get(0)) : null;
+                if (index != null) {
+                    query.append(" USE INDEX (").append(index).append(")");
+                }
+                query.append(" WHERE ").append(columns.get(0))
+                    .append(kind == Kind.SEARCH_PREFIX ? " LIKE ? ESCAPE '!'" : " = ?")
+                    .append(" ORDER BY ").append(columns.get(0)).append(" LIMIT ?");
+            }
+            case SEARCH_CONTAINS -> {
+                query.append("SELECT * FROM ").append(tableName).append(" WHERE ");
+                for (int i = 0; i < columns.size(); i++) {
+                    query.append(i == 0 ? "" : " OR ").append(columns.get(i)).append(" LIKE ? ESCAPE '!'");
+                }
+                query.append(" LIMIT ?");
+            }
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,255 @@
+package dao;
+
+import dao.SchemaCache.Kind;
+import util.DatabaseUtil;
+import util.Metrics;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reports what changed in one table since the last poll, for a grid that
+ * wants to stay current without reading the table again.
+ *
+ * The feed keeps a high-watermark on the primary key, so new rows are read
+ * with a keyset query above it. When the table has a last-modified
+ * timestamp column (updated_at and similar names, or the one named by
+ * -Dpharma.changes.&lt;table&gt;.column) a second watermark on it finds
+ * rows updated anywhere. That watermark is inclusive, since a row updated
+ * in the same clock tick may commit after a poll has read the tick; the
+ * rows already reported at the watermark are remembered and left out.
+ * Tables without one, like the current schema, only
+ * see updates and deletes among the rows in view, which every poll reads
+ * again by key range; the row count tells the caller when rows elsewhere
+ * were deleted.
+ */
+public class TableChangeFeed {
+    // More new or updated rows than this in one poll and the caller should reload instead
+    private static final int MAX_ROWS = Integer.getInteger("pharma.changes.maxRows", 500);
+    private static final Set<String> UPDATED_AT_NAMES =
+        Set.of("updated_at", "last_updated", "last_modified", "modified_at", "updated");
+
+    private static final Metrics.Timer POLL_TIMER = Metrics.timer("dao.pollChanges");
+
+    /**
+     * One poll's findings. inserted are rows above the old key watermark,
+     * updated are rows past the last-modified watermark (empty without such
+     * a column), window is every row now between fromKey and toKey. overflow
+     * means there were more new or updated rows than were read.
+     */
+    public record Changes(int rowCount, List<Object[]> inserted, List<Object[]> updated,
+                          Object fromKey, Object toKey, List<Object[]> window, boolean overflow) {
+    }
+
+    private final String tableName;
+    private final String pkColumn;
+    private final String updatedColumn;
+    private final int updatedIndex;
+    private final int pkIndex;
+    private final List<String> summaryColumns;
+
+    private Object maxKey;
+    private Object maxUpdated;
+    // Rows as last reported whose last-modified value is maxUpdated
+    private final Set<List<Object>> seenAtMaxUpdated = new HashSet<>();
+    private int rowCount;
+
+    private TableChangeFeed(TableMetadata metadata, String updatedColumn) {
+        this.tableName = metadata.getTableName();
+        this.pkColumn = metadata.getPrimaryKeyColumn();
+        this.updatedColumn = updatedColumn;
+        this.updatedIndex = updatedColumn == null ? -1 : metadata.indexOf(updatedColumn);
+        this.pkIndex = metadata.indexOf(pkColumn);
+        this.summaryColumns = updatedColumn == null ? List.of(pkColumn) : List.of(pkColumn, updatedColumn);
+    }
+
+    /**
+     * Starts a feed at the table's current state. Open it before reading the
+     * rows it will keep current, so nothing written in between is missed.
+     * Null for tables without a single-column primary key.
+     */
+    public static TableChangeFeed open(TableMetadata metadata) throws SQLException {
+        if (metadata.getPrimaryKeyColumn() == null) {
+            return null;
+        }
+        TableChangeFeed feed = new TableChangeFeed(metadata, findUpdatedColumn(metadata));
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            Object[] summary = feed.readSummary(conn);
+            feed.rowCount = ((Number) summary[0]).intValue();
+            feed.maxKey = summary[1];
+            feed.maxUpdated = feed.updatedColumn != null ? summary[2] : null;
+            if (feed.maxUpdated != null) {
+                // The rows at the watermark are already current for the caller
+                feed.readUpdated(conn);
+            }
+        }
+        return feed;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /** Position of the primary key in the table's rows. */
+    public int getPkIndex() {
+        return pkIndex;
+    }
+
+    /**
+     * Reads what changed since the last poll and moves the watermarks past
+     * it. fromKey and toKey bound the rows in view, both null for none. Only
+     * the summary query, and the rows at the last-modified watermark, are
+     * read when nothing changed and nothing is in view.
+     */
+    public synchronized Changes poll(Object fromKey, Object toKey) throws SQLException {
+        try (Metrics.Sample sample = POLL_TIMER.time();
+             Connection conn = DatabaseUtil.getConnection()) {
+            Object[] summary = readSummary(conn);
+            int rowCount = ((Number) summary[0]).intValue();
+            boolean overflow = false;
+
+            List<Object[]> inserted = List.of();
+            Object newMaxKey = summary[1];
+            if (newMaxKey != null && (maxKey == null || compareKeys(newMaxKey, maxKey) > 0)) {
+                Kind kind = maxKey == null ? Kind.SELECT_FIRST_PAGE : Kind.SELECT_PAGE_AFTER;
+                inserted = maxKey == null ? readRows(conn, kind, pkColumn, MAX_ROWS + 1)
+                                          : readRows(conn, kind, pkColumn, maxKey, MAX_ROWS + 1);
+                overflow = inserted.size() > MAX_ROWS;
+                inserted = trim(inserted);
+            }
+            maxKey = newMaxKey;
+
+            List<Object[]> updated = List.of();
+            if (updatedColumn != null) {
+                Object newMaxUpdated = summary[2];
+                if (newMaxUpdated != null) {
+                    updated = readUpdated(conn);
+                    if (updated.size() > MAX_ROWS) {
+                        overflow = true;
+                        updated = trim(updated);
+                        // The caller reloads; carry on from what the summary saw
+                        maxUpdated = newMaxUpdated;
+                        seenAtMaxUpdated.clear();
+                    }
+                }
+            }
+
+            List<Object[]> window = fromKey == null || toKey == null ? List.of()
+                : readRows(conn, Kind.SELECT_RANGE, pkColumn, fromKey, toKey);
+
+            // Whoever made the change, cached reads of the table are now out of date
+            if (rowCount != this.rowCount || !inserted.isEmpty() || !updated.isEmpty()) {
+                QueryCache.invalidate(tableName);
+            }
+            this.rowCount = rowCount;
+
+            sample.success();
+            return new Changes(rowCount, inserted, updated, fromKey, toKey, window, overflow);
+        }
+    }
+
+    // Rows from the watermark on, less those already reported at it; the
+    // watermark moves to the newest row read and the rows at it are kept
+    private List<Object[]> readUpdated(Connection conn) throws SQLException {
+        List<Object[]> rows = readRows(conn, Kind.SELECT_CHANGED_SINCE, updatedColumn,
+            maxUpdated == null ? new Timestamp(0) : maxUpdated, MAX_ROWS + 1 + seenAtMaxUpdated.size());
+        if (rows.isEmpty()) {
+            return rows;
+        }
+        Object newest = rows.get(rows.size() - 1)[updatedIndex];
+        List<Object[]> updated = new ArrayList<>(rows.size());
+        Set<List<Object>> atNewest = new HashSet<>();
+        for (Object[] row : rows) {
+            List<Object> values = Arrays.asList(row);
+            boolean seen = maxUpdated != null && compareKeys(row[updatedIndex], maxUpdated) == 0
+                && seenAtMaxUpdated.contains(values);
+            if (!seen) {
+                updated.add(row);
+            }
+            if (compareKeys(row[updatedIndex], newest) == 0) {
+                atNewest.add(values);
+            }
+        }
+        seenAtMaxUpdated.clear();
+        seenAtMaxUpdated.addAll(atNewest);
+        maxUpdated = newest;
+        return updated;
+    }
+
+    /**
+     * Orders primary keys the way the database does for the usual key types:
+     * numbers by value whatever their class, other comparables naturally and
+     * anything else by text.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compareKeys(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            return Long.compare(x.longValue(), y.longValue());
+        }
+        if (a instanceof Comparable c && a.getClass().isInstance(b)) {
+            return c.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private Object[] readSummary(Connection conn) throws SQLException {
+        String query = SchemaCache.getSql(Kind.SUMMARY, tableName, summaryColumns);
+        try (PreparedStatement pstmt = conn.prepareStatement(query);
+             ResultSet rs = PharmacyDAO.executeQuery(pstmt, query)) {
+            rs.next();
+            Object[] summary = new Object[summaryColumns.size() + 1];
+            for (int i = 0; i < summary.length; i++) {
+                summary[i] = rs.getObject(i + 1);
+            }
+            return summary;
+        }
+    }
+
+    private List<Object[]> readRows(Connection conn, Kind kind, String column, Object... params) throws SQLException {
+        String query = SchemaCache.getSql(kind, tableName, List.of(column));
+        List<Object[]> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, query)) {
+                int cols = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    Object[] row = new Object[cols];
+                    for (int i = 0; i < cols; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static List<Object[]> trim(List<Object[]> rows) {
+        return rows.size() > MAX_ROWS ? rows.subList(0, MAX_ROWS) : rows;
+    }
+
+    private static String findUpdatedColumn(TableMetadata metadata) {
+        String configured = System.getProperty("pharma.changes." + metadata.getTableName().toLowerCase() + ".column");
+        if (configured != null) {
+            return metadata.indexOf(configured) >= 0 ? configured : null;
+        }
+        for (String column : metadata.getColumnNames()) {
+            int type = metadata.getColumnType(column);
+            if (UPDATED_AT_NAMES.contains(column.toLowerCase())
+                    && (type == Types.TIMESTAMP || type == Types.TIMESTAMP_WITH_TIMEZONE)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
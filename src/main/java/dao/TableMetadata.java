@@ -0,0 +1,140 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Column layout of a table as reported by DatabaseMetaData. Instances are
+ * immutable and shared through {@link SchemaCache}.
+ */
+public class TableMetadata {
+    private final String tableName;
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnTypes;
+    private final List<String> primaryKey;
+    private final Set<String> autoIncrementColumns;
+    // Lower-case column name -> an index whose first column it is
+    private final Map<String, String> leadingIndexes;
+
+    private TableMetadata(String tableName, List<String> columnNames, Map<String, Integer> columnTypes,
+                          List<String> primaryKey, Set<String> autoIncrementColumns,
+                          Map<String, String> leadingIndexes) {
+        this.tableName = tableName;
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.columnTypes = Collections.unmodifiableMap(columnTypes);
+        this.primaryKey = Collections.unmodifiableList(primaryKey);
+        this.autoIncrementColumns = Collections.unmodifiableSet(autoIncrementColumns);
+        this.leadingIndexes = Collections.unmodifiableMap(leadingIndexes);
+    }
+
+    static TableMetadata load(Connection conn, String tableName) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        String catalog = conn.getCatalog();
+
+        List<String> columnNames = new ArrayList<>();
+        Map<String, Integer> columnTypes = new HashMap<>();
+        Set<String> autoIncrement = new HashSet<>();
+        try (ResultSet rs = meta.getColumns(catalog, null, tableName, "%")) {
+            while (rs.next()) {
+                String column = rs.getString("COLUMN_NAME");
+                columnNames.add(column);
+                columnTypes.put(column.toLowerCase(), rs.getInt("DATA_TYPE"));
+                if ("YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"))) {
+                    autoIncrement.add(column.toLowerCase());
+                }
+            }
+        }
+        if (columnNames.isEmpty()) {
+            throw new SQLException("Unknown table: " + tableName);
+        }
+
+        // getPrimaryKeys is ordered by column name, KEY_SEQ gives the real key order
+        Map<Short, String> keyColumns = new TreeMap<>();
+        try (ResultSet rs = meta.getPrimaryKeys(catalog, null, tableName)) {
+            while (rs.next()) {
+                keyColumns.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        }
+
+        // Only used for USE INDEX hints, which are MySQL syntax
+        Map<String, String> leadingIndexes = new HashMap<>();
+        String product = meta.getDatabaseProductName();
+        boolean mysql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+        try (ResultSet rs = mysql ? meta.getIndexInfo(catalog, null, tableName, false, true) : null) {
+            while (rs != null && rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (indexName != null && column != null && rs.getShort("ORDINAL_POSITION") == 1) {
+                    leadingIndexes.putIfAbsent(column.toLowerCase(), indexName);
+                }
+            }
+        }
+
+        return new TableMetadata(tableName, columnNames, columnTypes,
+            new ArrayList<>(keyColumns.values()), autoIncrement, leadingIndexes);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /** Column names in table order, the same order as SELECT *. */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /** The java.sql.Types code of the column, or Types.OTHER if unknown. */
+    public int getColumnType(String columnName) {
+        return columnTypes.getOrDefault(columnName.toLowerCase(), java.sql.Types.OTHER);
+    }
+
+    public List<String> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /** The primary key column, or null when the key is missing or composite. */
+    public String getPrimaryKeyColumn() {
+        return primaryKey.size() == 1 ? primaryKey.get(0) : null;
+    }
+
+    /** True for character columns, the ones text search can match with LIKE. */
+    public boolean isTextColumn(String columnName) {
+        return switch (getColumnType(columnName)) {
+            case java.sql.Types.CHAR, java.sql.Types.VARCHAR, java.sql.Types.LONGVARCHAR,
+                 java.sql.Types.NCHAR, java.sql.Types.NVARCHAR, java.sql.Types.LONGNVARCHAR,
+                 java.sql.Types.CLOB, java.sql.Types.NCLOB -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Name of an index that starts with the column, for an index hint. Null
+     * when there is none or the database does not take MySQL index hints.
+     */
+    public String getIndexOn(String columnName) {
+        return leadingIndexes.get(columnName.toLowerCase());
+    }
+
+    public boolean isAutoIncrement(String columnName) {
+        return autoIncrementColumns.contains(columnName.toLowerCase());
+    }
+
+    public int indexOf(String columnName) {
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (columnNames.get(i).equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,36 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * The row changed or was deleted after the caller read it, so an update
+ * based on that read was not written. current is the row as it is now, or
+ * null when it has been deleted.
+ */
+public class UpdateConflictException extends SQLException {
+    private final String tableName;
+    private final Object key;
+    private final Object[] current;
+
+    public UpdateConflictException(String tableName, Object key, Object[] current) {
+        super((current == null ? "Row " + key + " of " + tableName + " was deleted"
+                               : "Row " + key + " of " + tableName + " was changed")
+              + " by someone else since it was read", "40001");
+        this.tableName = tableName;
+        this.key = key;
+        this.current = current;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    /** The row as it is now, in table column order, or null if it was deleted. */
+    public Object[] getCurrent() {
+        return current;
+    }
+}
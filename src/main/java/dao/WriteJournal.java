@@ -0,0 +1,706 @@
+package dao;
+
+import dao.SchemaCache.Kind;
+import util.DatabaseUtil;
+import util.Metrics;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Local journal of the writes made while the database is unreachable, so
+ * the counter keeps working through a network outage.
+ *
+ * PharmacyDAO hands inserts, updates and deletes to the journal when it
+ * cannot get a connection, so nothing of a journaled write has reached the
+ * database. Records are appended to journal.log with a plain channel write
+ * and forced to disk by a background thread every
+ * -Dpharma.journal.syncMs (20 ms by default), which keeps an append to a
+ * few microseconds; a process crash loses nothing, a power cut at most the
+ * last interval. Once the journal holds anything, later writes join the
+ * queue behind it rather than overtaking it.
+ *
+ * A replay thread tries the database every -Dpharma.journal.retryMs and
+ * applies the journal in transactions of up to
+ * -Dpharma.journal.replayBatch writes, consecutive writes of the same
+ * statement sent as one JDBC batch. Every write carries the idempotency key
+ * (journal id, sequence number); each transaction records the last key it
+ * covers in the journal_applied table, so a replay cut short by a crash or
+ * a second outage never applies a write twice. A deadlock, lock wait
+ * timeout or lost connection rolls the transaction back and leaves the
+ * write for the next attempt; only a write the database refuses outright,
+ * such as a constraint or data error, is logged to rejected.log and skipped
+ * rather than blocking the rest.
+ */
+public final class WriteJournal implements Closeable {
+    // Each can be overridden with -Dpharma.journal.<name>=<value>; -Dpharma.journal=false turns journaling off
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pharma.journal", "true"));
+    private static final String DEFAULT_DIR = System.getProperty("pharma.journal.dir", "journal");
+    private static final long SYNC_MS = Long.getLong("pharma.journal.syncMs", 20);
+    private static final long RETRY_MS = Long.getLong("pharma.journal.retryMs", 5_000);
+    private static final int REPLAY_BATCH = Integer.getInteger("pharma.journal.replayBatch", 1_000);
+
+    private static final int MAGIC = 0x504A4C31; // "PJL1"
+    // magic, spare, journal id, sequence number of the first record not yet applied
+    private static final int HEADER_BYTES = 24;
+    // length and CRC-32 of the record body
+    private static final int RECORD_PREFIX_BYTES = 8;
+
+    static final String APPLIED_TABLE = "journal_applied";
+    private static final String CREATE_APPLIED = "CREATE TABLE IF NOT EXISTS " + APPLIED_TABLE +
+                                                 " (journal_id BIGINT NOT NULL, seq BIGINT NOT NULL," +
+                                                 " PRIMARY KEY (journal_id, seq))";
+    private static final String SELECT_APPLIED = "SELECT MAX(seq) FROM " + APPLIED_TABLE + " WHERE journal_id = ?";
+    private static final String INSERT_APPLIED = "INSERT INTO " + APPLIED_TABLE + " (journal_id, seq) VALUES (?, ?)";
+    private static final String PRUNE_APPLIED = "DELETE FROM " + APPLIED_TABLE + " WHERE journal_id = ? AND seq < ?";
+
+    private static final Metrics.Timer APPEND_TIMER = Metrics.timer("journal.append");
+    private static final Metrics.Timer REPLAY_TIMER = Metrics.timer("journal.replay");
+
+    private static WriteJournal defaultJournal;
+
+    public enum Op { INSERT, UPDATE, DELETE }
+
+    /**
+     * One journaled write. columns and values are what the DAO method was
+     * given: the inserted columns, the updated columns with the key first,
+     * or the key column alone for a delete.
+     */
+    public record Entry(long seq, Op op, String table, Vector<String> columns, Vector<String> values) {
+    }
+
+    public record Stats(long journalId, int pending, long replayed, long rejected, boolean offline) {
+    }
+
+    private final Path dir;
+    private final FileChannel channel;
+    private final long journalId;
+    private final ScheduledExecutorService syncer;
+    private final ScheduledExecutorService replayer;
+    private final CRC32 crc = new CRC32();
+
+    // Guarded by this: everything that appends
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private long size;
+    private long nextSeq;
+    private int pending;
+    private boolean dirty;
+    private volatile boolean offline;
+
+    // Used by the replay thread only
+    private long replayOffset = HEADER_BYTES;
+    private boolean appliedTableReady;
+    private volatile long replayed;
+    private volatile long rejected;
+
+    private WriteJournal(Path dir, FileChannel channel, long journalId) {
+        this.dir = dir;
+        this.channel = channel;
+        this.journalId = journalId;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(daemon("journal-sync"));
+        this.replayer = Executors.newSingleThreadScheduledExecutor(daemon("journal-replay"));
+    }
+
+    /** The journal under journal/ (-Dpharma.journal.dir), opened on first use; null when journaling is off. */
+    public static synchronized WriteJournal getDefault() throws IOException {
+        if (ENABLED && defaultJournal == null) {
+            defaultJournal = open(Paths.get(DEFAULT_DIR));
+        }
+        return defaultJournal;
+    }
+
+    /**
+     * Opens or creates the journal in the directory and starts replaying
+     * what an earlier run left in it. A record cut short by a crash is
+     * dropped; it was never acknowledged to the caller as durable.
+     */
+    public static WriteJournal open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel channel = FileChannel.open(dir.resolve("journal.log"),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long journalId;
+            long firstSeq;
+            if (channel.size() < HEADER_BYTES) {
+                journalId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+                firstSeq = 0;
+                header.putInt(MAGIC).putInt(0).putLong(journalId).putLong(firstSeq).flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                channel.force(true);
+            } else {
+                readFully(channel, header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a write journal: " + dir.resolve("journal.log"));
+                }
+                header.getInt();
+                journalId = header.getLong();
+                firstSeq = header.getLong();
+            }
+
+            WriteJournal journal = new WriteJournal(dir, channel, journalId);
+            journal.recover(firstSeq);
+            journal.syncer.scheduleWithFixedDelay(journal::sync, SYNC_MS, SYNC_MS, TimeUnit.MILLISECONDS);
+            journal.replayer.scheduleWithFixedDelay(journal::replayQuietly, 0, RETRY_MS, TimeUnit.MILLISECONDS);
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * True while writes must go to the journal: the database was found
+     * unreachable, or the journal still holds writes not yet replayed.
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /** Called when the database could not be reached; replay is tried again shortly. */
+    public void markOffline() {
+        offline = true;
+    }
+
+    /** Appends the write and returns its sequence number. */
+    public long append(Op op, String table, List<String> columns, List<String> values) throws IOException {
+        try (Metrics.Sample sample = APPEND_TIMER.time()) {
+            byte[] tableBytes = table.getBytes(StandardCharsets.UTF_8);
+            byte[][] columnBytes = encode(columns);
+            byte[][] valueBytes = encode(values);
+            int bodyLength = 8 + 1 + sizeOf(tableBytes) + sizeOf(columnBytes) + sizeOf(valueBytes);
+
+            long seq;
+            synchronized (this) {
+                if (buffer.capacity() < RECORD_PREFIX_BYTES + bodyLength) {
+                    buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(RECORD_PREFIX_BYTES + bodyLength) << 1);
+                }
+                seq = nextSeq;
+                buffer.clear().position(RECORD_PREFIX_BYTES);
+                buffer.putLong(seq).put((byte) op.ordinal());
+                put(buffer, tableBytes);
+                put(buffer, columnBytes);
+                put(buffer, valueBytes);
+                buffer.flip();
+
+                crc.reset();
+                crc.update(buffer.duplicate().position(RECORD_PREFIX_BYTES));
+                buffer.putInt(0, bodyLength).putInt(4, (int) crc.getValue());
+
+                size += writeFully(channel, buffer, size);
+                nextSeq++;
+                pending++;
+                dirty = true;
+                offline = true;
+            }
+            sample.success();
+            return seq;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(journalId, pending, replayed, rejected, offline);
+    }
+
+    /**
+     * Replays the journal now instead of waiting for the replay thread.
+     * Returns false when the database is still unreachable.
+     */
+    public boolean replay() throws IOException, SQLException {
+        try {
+            return replayer.submit(() -> {
+                replayPending();
+                return !offline;
+            }).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journal", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        replayer.shutdownNow();
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(5, TimeUnit.SECONDS);
+            replayer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+        synchronized (WriteJournal.class) {
+            if (defaultJournal == this) {
+                defaultJournal = null;
+            }
+        }
+    }
+
+    /**
+     * Whether the failure means the database could not be reached at all,
+     * as opposed to a statement it refused.
+     */
+    public static boolean isConnectionFailure(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Worth another attempt later rather than a reject
+    private static boolean isTransient(SQLException e) {
+        return isConnectionFailure(e) || OrderCheckout.isRetryable(e);
+    }
+
+    // Finds the end of the last complete record and the next sequence number
+    private void recover(long firstSeq) throws IOException {
+        long offset = HEADER_BYTES;
+        long end = channel.size();
+        long seq = firstSeq;
+        int count = 0;
+        long firstPending = -1;
+        for (Entry entry; (entry = readEntry(offset, end)) != null; ) {
+            if (entry.seq() >= firstSeq) {
+                count++;
+                if (firstPending < 0) {
+                    firstPending = offset;
+                }
+            }
+            seq = entry.seq() + 1;
+            offset += RECORD_PREFIX_BYTES + recordLength(offset);
+        }
+        if (offset < end) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        size = offset;
+        nextSeq = seq;
+        pending = count;
+        replayOffset = firstPending < 0 ? offset : firstPending;
+        offline = count > 0;
+    }
+
+    // Null at the end or at a torn record
+    private Entry readEntry(long offset, long end) throws IOException {
+        if (end - offset < RECORD_PREFIX_BYTES) {
+            return null;
+        }
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_BYTES);
+        readFully(channel, prefix, offset);
+        prefix.flip();
+        int length = prefix.getInt();
+        int checksum = prefix.getInt();
+        if (length < 9 || end - offset - RECORD_PREFIX_BYTES < length) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body, offset + RECORD_PREFIX_BYTES);
+        body.flip();
+        CRC32 check = new CRC32();
+        check.update(body.duplicate());
+        if ((int) check.getValue() != checksum) {
+            return null;
+        }
+        long seq = body.getLong();
+        Op op = Op.values()[body.get()];
+        String table = getString(body);
+        Vector<String> columns = getStrings(body);
+        Vector<String> values = getStrings(body);
+        return new Entry(seq, op, table, columns, values);
+    }
+
+    private int recordLength(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, offset);
+        return length.flip().getInt();
+    }
+
+    private void sync() {
+        boolean force;
+        synchronized (this) {
+            force = dirty;
+            dirty = false;
+        }
+        if (force) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void replayQuietly() {
+        try {
+            replayPending();
+        } catch (SQLException | IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Runs on the replay thread
+    private void replayPending() throws IOException, SQLException {
+        if (!offline) {
+            return;
+        }
+        try (Metrics.Sample sample = REPLAY_TIMER.time();
+             Connection conn = DatabaseUtil.getConnection()) {
+            if (!appliedTableReady) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(CREATE_APPLIED);
+                }
+                appliedTableReady = true;
+            }
+            long applied = appliedUpTo(conn);
+            Set<String> tables = new HashSet<>();
+            while (true) {
+                long end;
+                synchronized (this) {
+                    end = size;
+                    if (replayOffset >= end) {
+                        finishReplay();
+                    }
+                }
+                if (!offline) {
+                    pruneApplied(conn);
+                    break;
+                }
+                List<Entry> batch = new ArrayList<>();
+                long offset = replayOffset;
+                int done = 0;
+                for (Entry entry; done < REPLAY_BATCH && (entry = readEntry(offset, end)) != null; done++) {
+                    offset += RECORD_PREFIX_BYTES + recordLength(offset);
+                    if (entry.seq() > applied) {
+                        batch.add(entry);
+                        tables.add(entry.table());
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    applyBatch(conn, batch);
+                    applied = batch.get(batch.size() - 1).seq();
+                }
+                replayOffset = offset;
+                synchronized (this) {
+                    pending -= done;
+                }
+                afterWrites(tables);
+                tables.clear();
+            }
+            sample.success();
+        } catch (SQLException e) {
+            if (!isTransient(e)) {
+                throw e;
+            }
+            // Still unreachable or lost a lock, replayOffset has not moved past the
+            // batch and the next attempt comes with the next retry interval
+        }
+    }
+
+    private long appliedUpTo(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_APPLIED)) {
+            pstmt.setLong(1, journalId);
+            try (ResultSet rs = PharmacyDAO.executeQuery(pstmt, SELECT_APPLIED)) {
+                long seq = rs.next() ? rs.getLong(1) : -1;
+                return rs.wasNull() ? -1 : seq;
+            }
+        }
+    }
+
+    // One transaction for the batch; if the database refuses any write in it, each write gets its own.
+    // A transient failure propagates so the whole batch is retried, entries already committed one by
+    // one are skipped then by their sequence number
+    private void applyBatch(Connection conn, List<Entry> batch) throws SQLException, IOException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            try {
+                for (int from = 0; from < batch.size(); ) {
+                    int to = from + 1;
+                    while (to < batch.size() && sameStatement(batch.get(from), batch.get(to))) {
+                        to++;
+                    }
+                    execute(conn, batch.subList(from, to));
+                    from = to;
+                }
+                markApplied(conn, batch.get(batch.size() - 1).seq());
+                conn.commit();
+                replayed += batch.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                if (isTransient(e)) {
+                    throw e;
+                }
+                for (Entry entry : batch) {
+                    applyOne(conn, entry);
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void applyOne(Connection conn, Entry entry) throws SQLException, IOException {
+        try {
+            execute(conn, List.of(entry));
+            markApplied(conn, entry.seq());
+            conn.commit();
+            replayed++;
+        } catch (SQLException e) {
+            conn.rollback();
+            if (isTransient(e)) {
+                throw e;
+            }
+            reject(entry, e);
+            markApplied(conn, entry.seq());
+            conn.commit();
+        }
+    }
+
+    // Entries all run the same statement
+    private static void execute(Connection conn, List<Entry> entries) throws SQLException {
+        Entry first = entries.get(0);
+        String query = SchemaCache.getSql(kindOf(first.op()), first.table(), first.columns());
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            for (Entry entry : entries) {
+                switch (entry.op()) {
+                    case INSERT -> PharmacyDAO.bindInsert(pstmt, entry.values());
+                    case UPDATE -> PharmacyDAO.bindUpdate(pstmt, entry.values());
+                    case DELETE -> pstmt.setString(1, entry.values().get(0));
+                }
+                pstmt.addBatch();
+            }
+            PharmacyDAO.executeBatch(pstmt, query);
+        }
+    }
+
+    private void markApplied(Connection conn, long seq) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_APPLIED)) {
+            pstmt.setLong(1, journalId);
+            pstmt.setLong(2, seq);
+            PharmacyDAO.executeUpdate(pstmt, INSERT_APPLIED);
+        }
+    }
+
+    private void reject(Entry entry, SQLException e) throws IOException {
+        rejected++;
+        String line = Instant.now() + "\t" + entry.seq() + "\t" + entry.op() + "\t" + entry.table() + "\t" +
+                      entry.columns() + "\t" + entry.values() + "\t" + e.getMessage() + System.lineSeparator();
+        try (Writer out = Files.newBufferedWriter(dir.resolve("rejected.log"), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line);
+        }
+    }
+
+    /**
+     * Called with the lock held once everything is replayed: the header
+     * moves past the replayed records, then they are cut off. Sequence
+     * numbers carry on, so keys already in journal_applied stay unique.
+     */
+    private void finishReplay() throws IOException {
+        if (size > HEADER_BYTES) {
+            ByteBuffer firstSeq = ByteBuffer.allocate(8).putLong(nextSeq).flip();
+            writeFully(channel, firstSeq, 16);
+            channel.force(false);
+            channel.truncate(HEADER_BYTES);
+            channel.force(true);
+            size = HEADER_BYTES;
+            replayOffset = HEADER_BYTES;
+            dirty = false;
+        }
+        offline = false;
+    }
+
+    // Only the last key is needed to resume
+    private void pruneApplied(Connection conn) throws SQLException {
+        long last;
+        synchronized (this) {
+            last = nextSeq - 1;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(PRUNE_APPLIED)) {
+            pstmt.setLong(1, journalId);
+            pstmt.setLong(2, last);
+            PharmacyDAO.executeUpdate(pstmt, PRUNE_APPLIED);
+        }
+    }
+
+    // Journaled writes skipped the cache invalidation a direct write does
+    private static void afterWrites(Set<String> tables) {
+        for (String table : tables) {
+            QueryCache.invalidate(table);
+            if (table.equalsIgnoreCase(ProductCatalog.TABLE)) {
+                ProductCatalog.invalidateAll();
+            }
+            if (table.equalsIgnoreCase("orders") || table.equalsIgnoreCase("orderdetails")) {
+                SalesAnalytics.markStale();
+            }
+        }
+    }
+
+    private static boolean sameStatement(Entry a, Entry b) {
+        return a.op() == b.op() && a.table().equals(b.table()) && a.columns().equals(b.columns());
+    }
+
+    private static Kind kindOf(Op op) {
+        return switch (op) {
+            case INSERT -> Kind.INSERT;
+            case UPDATE -> Kind.UPDATE;
+            case DELETE -> Kind.DELETE;
+        };
+    }
+
+    // Strings are stored as a varint of the UTF-8 length plus one, 0 for null
+
+    private static byte[][] encode(List<String> strings) {
+        byte[][] encoded = new byte[strings.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            String s = strings.get(i);
+            encoded[i] = s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return bytes == null ? 1 : varintSize(bytes.length + 1) + bytes.length;
+    }
+
+    private static int sizeOf(byte[][] strings) {
+        int size = varintSize(strings.length);
+        for (byte[] bytes : strings) {
+            size += sizeOf(bytes);
+        }
+        return size;
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.put((byte) 0);
+        } else {
+            putVarint(buffer, bytes.length + 1);
+            buffer.put(bytes);
+        }
+    }
+
+    private static void put(ByteBuffer buffer, byte[][] strings) {
+        putVarint(buffer, strings.length);
+        for (byte[] bytes : strings) {
+            put(buffer, bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    private static Vector<String> getStrings(ByteBuffer buffer) {
+        int count = getVarint(buffer);
+        Vector<String> strings = new Vector<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(getString(buffer));
+        }
+        return strings;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the journal");
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
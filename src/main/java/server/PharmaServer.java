@@ -0,0 +1,707 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dao.BillData;
+import dao.BillGenerator;
+import dao.PharmacyDAO;
+import dao.QueryCache;
+import dao.TableMetadata;
+import dao.UpdateConflictException;
+import dao.WriteJournal;
+import util.DatabaseUtil;
+import util.Json;
+import util.Metrics;
+
+import javax.swing.table.DefaultTableModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Headless HTTP/JSON front end to PharmacyDAO and BillGenerator, so several
+ * counters share one connection pool and one set of caches instead of each
+ * holding its own. Every request runs on its own virtual thread; database
+ * concurrency is bounded by the pool.
+ *
+ * <pre>
+ * GET    /api/tables                          table names
+ * GET    /api/tables/{table}/columns          column names and primary key
+ * GET    /api/tables/{table}/{id}             one row, tagged with its ETag
+ * GET    /api/tables/{table}?after=&amp;limit=    a page of rows in key order
+ * GET    /api/tables/{table}?q=&amp;column=&amp;limit= search, as PharmacyDAO.searchTable
+ * POST   /api/tables/{table}                  insert the row in the body
+ * PUT    /api/tables/{table}/{id}             update the columns in the body, If-Match required
+ * DELETE /api/tables/{table}/{id}             delete the row
+ * GET    /api/bills/{orderId}?format=pdf|html the bill
+ * GET    /api/metrics                         timer statistics
+ * </pre>
+ *
+ * Rows are sent as {"columns":[...],"rows":[[...],...],"etags":[...],"next":key},
+ * where next is the after value for the following page (null on the last
+ * one).
+ * Request bodies are flat JSON objects of column to value. GET responses
+ * carry an ETag and answer a matching If-None-Match with 304; bodies over
+ * 1 KB are gzipped when the client accepts it.
+ *
+ * Every row has its own ETag, sent with a single row and as the etags array
+ * alongside a page. A PUT must carry the row's tag in If-Match; if the row
+ * has changed since, nothing is written and the answer is 412 with the row
+ * as it is now and its tag, so the client can merge and try again.
+ *
+ * There is no authentication, and any caller can change any table, so the
+ * server only listens on the loopback interface unless
+ * -Dpharma.server.bind names another address (0.0.0.0 for all). Expose it
+ * beyond the machine only on a network where every host may edit the data.
+ */
+public final class PharmaServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = Integer.getInteger("pharma.server.port", 8080);
+    private static final String BIND_ADDRESS = System.getProperty("pharma.server.bind", "127.0.0.1");
+
+    private static final int DEFAULT_PAGE_SIZE = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final int GZIP_MIN_BYTES = 1024;
+    // Unknown table names reload the list at most this often
+    private static final long TABLE_RELOAD_INTERVAL_NS = 10_000_000_000L;
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final PharmacyDAO dao;
+    private final BillGenerator billGenerator;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Lower-case name to the name as the database spells it. Only these are
+    // ever put into SQL text, so the URL cannot inject identifiers.
+    private volatile Map<String, String> tables = Map.of();
+    private volatile long tablesLoadedAt;
+
+    private final Map<String, Metrics.Timer> timers = new HashMap<>();
+
+    private PharmaServer(PharmacyDAO dao, BillGenerator billGenerator, HttpServer server) {
+        this.dao = dao;
+        this.billGenerator = billGenerator;
+        this.server = server;
+        for (String route : List.of("tables", "columns", "row", "rows", "search", "insert", "update", "delete",
+                                    "bill", "metrics")) {
+            timers.put(route, Metrics.timer("http." + route));
+        }
+    }
+
+    /**
+     * Starts serving on the port (0 picks a free one) of the
+     * -Dpharma.server.bind address, loopback by default, and returns at once.
+     */
+    public static PharmaServer start(int port) throws IOException, SQLException {
+        // Headers and body go out in separate writes; with Nagle on, the body
+        // waits for the client's delayed ACK of the headers, about 40 ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getByName(BIND_ADDRESS), port), 0);
+        PharmaServer server = new PharmaServer(new PharmacyDAO(), new BillGenerator(), http);
+        server.loadTables();
+        http.createContext("/api/", server::handle);
+        http.setExecutor(server.executor);
+        http.start();
+        return server;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private Vector<String> loadTables() throws SQLException {
+        Vector<String> names = dao.getTableNames();
+        Map<String, String> byKey = new HashMap<>();
+        for (String name : names) {
+            byKey.put(name.toLowerCase(Locale.ROOT), name);
+        }
+        tables = Map.copyOf(byKey);
+        tablesLoadedAt = System.nanoTime();
+        return names;
+    }
+
+    private String resolveTable(String name) throws SQLException {
+        String key = name.toLowerCase(Locale.ROOT);
+        String table = tables.get(key);
+        if (table == null && System.nanoTime() - tablesLoadedAt > TABLE_RELOAD_INTERVAL_NS) {
+            loadTables();
+            table = tables.get(key);
+        }
+        if (table == null) {
+            throw new HttpError(404, "Unknown table " + name);
+        }
+        return table;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getRawPath().substring("/api/".length()).split("/");
+            String method = exchange.getRequestMethod();
+            String route = route(method, path, exchange);
+            try (Metrics.Sample sample = timers.get(route).time()) {
+                dispatch(route, path, exchange);
+                sample.success();
+            }
+        } catch (HttpError e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (SQLException e) {
+            sendError(exchange, statusOf(e), e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String route(String method, String[] path, HttpExchange exchange) {
+        boolean hasQuery = query(exchange).containsKey("q");
+        String route = switch (path[0]) {
+            case "tables" -> switch (path.length) {
+                case 1 -> method.equals("GET") ? "tables" : null;
+                case 2 -> switch (method) {
+                    case "GET" -> hasQuery ? "search" : "rows";
+                    case "POST" -> "insert";
+                    default -> null;
+                };
+                case 3 -> switch (method) {
+                    case "GET" -> path[2].equals("columns") ? "columns" : "row";
+                    case "PUT" -> "update";
+                    case "DELETE" -> "delete";
+                    default -> null;
+                };
+                default -> null;
+            };
+            case "bills" -> path.length == 2 && method.equals("GET") ? "bill" : null;
+            case "metrics" -> path.length == 1 && method.equals("GET") ? "metrics" : null;
+            default -> null;
+        };
+        if (route == null) {
+            throw new HttpError(404, "No such resource");
+        }
+        return route;
+    }
+
+    private void dispatch(String route, String[] path, HttpExchange exchange) throws Exception {
+        Map<String, String> query = query(exchange);
+        switch (route) {
+            case "tables" -> {
+                StringBuilder json = new StringBuilder("[");
+                for (String name : loadTables()) {
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    Json.appendString(json, name);
+                }
+                sendJson(exchange, json.append(']'));
+            }
+            case "columns" -> {
+                TableMetadata metadata = dao.getTableMetadata(resolveTable(decode(path[1])));
+                StringBuilder json = new StringBuilder("{\"columns\":");
+                appendArray(json, metadata.getColumnNames().toArray());
+                json.append(",\"primaryKey\":");
+                Json.appendValue(json, metadata.getPrimaryKeyColumn());
+                sendJson(exchange, json.append('}'));
+            }
+            case "row" -> {
+                String table = resolveTable(decode(path[1]));
+                TableMetadata metadata = dao.getTableMetadata(table);
+                String id = decode(path[2]);
+                Object[] row = dao.getRow(table, requirePrimaryKey(table, metadata), id);
+                if (row == null) {
+                    throw new HttpError(404, "No row " + id + " in " + table);
+                }
+                sendJson(exchange, new Body(row(metadata, row), rowTag(row)));
+            }
+            case "rows" -> {
+                String table = resolveTable(decode(path[1]));
+                sendJson(exchange, Body.tagged(rows(table, query)));
+            }
+            case "search" -> {
+                String table = resolveTable(decode(path[1]));
+                DefaultTableModel model = dao.searchTable(table, query.get("column"), query.get("q"),
+                    limit(query));
+                sendJson(exchange, rows(model));
+            }
+            case "insert" -> {
+                String table = resolveTable(decode(path[1]));
+                Vector<String> columns = new Vector<>();
+                Vector<String> values = new Vector<>();
+                readRow(exchange, dao.getTableMetadata(table), columns, values);
+                dao.insertRecord(table, columns, values);
+                send(exchange, 201, null, null);
+            }
+            case "update" -> update(exchange, resolveTable(decode(path[1])), decode(path[2]));
+            case "delete" -> {
+                String table = resolveTable(decode(path[1]));
+                dao.deleteRecord(table, requirePrimaryKey(table, dao.getTableMetadata(table)), decode(path[2]));
+                send(exchange, 204, null, null);
+            }
+            case "bill" -> sendBill(exchange, path[1], query.getOrDefault("format", "pdf"));
+            case "metrics" -> {
+                StringBuilder json = new StringBuilder("{");
+                for (Metrics.Timer timer : Metrics.getTimers().values()) {
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    Json.appendString(json, timer.getName());
+                    json.append(":{\"count\":").append(timer.getCount())
+                        .append(",\"errors\":").append(timer.getErrorCount())
+                        .append(",\"meanMillis\":").append(timer.getMeanMillis())
+                        .append(",\"p99Millis\":").append(timer.getP99Millis())
+                        .append('}');
+                }
+                QueryCache.Stats cache = QueryCache.getStats();
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append("\"queryCache\":{\"hits\":").append(cache.hits())
+                    .append(",\"misses\":").append(cache.misses())
+                    .append(",\"evictions\":").append(cache.evictions())
+                    .append(",\"invalidations\":").append(cache.invalidations())
+                    .append(",\"entries\":").append(cache.entries())
+                    .append(",\"bytes\":").append(cache.bytes())
+                    .append('}');
+                json.append(",\"replicas\":[");
+                List<DatabaseUtil.ReplicaStats> replicas = DatabaseUtil.getReplicaStats();
+                for (int i = 0; i < replicas.size(); i++) {
+                    DatabaseUtil.ReplicaStats replica = replicas.get(i);
+                    json.append(i == 0 ? "{\"url\":" : ",{\"url\":");
+                    Json.appendString(json, replica.url());
+                    json.append(",\"healthy\":").append(replica.healthy())
+                        .append(",\"lagMs\":").append(replica.lagMs())
+                        .append(",\"reads\":").append(replica.reads())
+                        .append('}');
+                }
+                json.append(']');
+                WriteJournal journal = WriteJournal.getDefault();
+                if (journal != null) {
+                    WriteJournal.Stats stats = journal.getStats();
+                    json.append(",\"journal\":{\"pending\":").append(stats.pending())
+                        .append(",\"replayed\":").append(stats.replayed())
+                        .append(",\"rejected\":").append(stats.rejected())
+                        .append(",\"offline\":").append(stats.offline())
+                        .append('}');
+                }
+                sendJson(exchange, json.append('}'));
+            }
+            default -> throw new IllegalStateException(route);
+        }
+    }
+
+    // Optimistic update against the row the client's If-Match tag was taken from
+    private void update(HttpExchange exchange, String table, String id) throws IOException, SQLException {
+        TableMetadata metadata = dao.getTableMetadata(table);
+        String pkColumn = requirePrimaryKey(table, metadata);
+        if (metadata.indexOf(pkColumn) != 0) {
+            throw new HttpError(400, "Table " + table + " does not have its primary key as the first column");
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch == null) {
+            throw new HttpError(428, "If-Match with the row's ETag is required");
+        }
+        Vector<String> columns = new Vector<>();
+        Vector<String> values = new Vector<>();
+        readRow(exchange, metadata, columns, values);
+        if (columns.size() == 1 && columns.get(0).equals(pkColumn)) {
+            throw new HttpError(400, "Nothing to update");
+        }
+
+        Object[] current = dao.getRow(table, pkColumn, id);
+        if (current == null) {
+            throw new HttpError(404, "No row " + id + " in " + table);
+        }
+        if (!tagMatches(ifMatch, rowTag(current))) {
+            sendConflict(exchange, metadata, current);
+            return;
+        }
+        // updateRecord wants every column in table order, key first, and
+        // writes only those whose text differs from the row read
+        Vector<String> allColumns = new Vector<>(metadata.getColumnNames());
+        Vector<String> edited = new Vector<>(allColumns.size());
+        for (int i = 0; i < allColumns.size(); i++) {
+            int index = columns.indexOf(allColumns.get(i));
+            Object value = index >= 0 ? values.get(index) : current[i];
+            edited.add(value == null ? "" : value.toString());
+        }
+        Object[] updated;
+        try {
+            updated = dao.updateRecord(table, allColumns, current, edited);
+        } catch (UpdateConflictException e) {
+            if (e.getCurrent() == null) {
+                throw new HttpError(412, e.getMessage());
+            }
+            sendConflict(exchange, metadata, e.getCurrent());
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", rowTag(updated));
+        send(exchange, 204, null, null);
+    }
+
+    private static void sendConflict(HttpExchange exchange, TableMetadata metadata, Object[] current)
+            throws IOException {
+        send(exchange, 412, JSON, new Body(row(metadata, current), rowTag(current)));
+    }
+
+    private static byte[] row(TableMetadata metadata, Object[] row) {
+        StringBuilder json = new StringBuilder("{\"columns\":");
+        appendArray(json, metadata.getColumnNames().toArray());
+        json.append(",\"row\":");
+        appendArray(json, row);
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String rowTag(Object[] row) {
+        StringBuilder json = new StringBuilder(64);
+        appendArray(json, row);
+        return etag(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // If-Match is a list of tags or *; a gzipped response's tag matches too
+    private static boolean tagMatches(String ifMatch, String etag) {
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipTag(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A page in key order, or the whole table when it has no single-column key
+    private StringBuilder rows(String table, Map<String, String> query) throws SQLException {
+        String pkColumn = dao.getPrimaryKeyColumn(table);
+        if (pkColumn == null) {
+            return rows(dao.getTableData(table));
+        }
+
+        TableMetadata metadata = dao.getTableMetadata(table);
+        int limit = limit(query);
+        List<Object[]> page = dao.getTablePage(table, pkColumn, query.get("after"), false, limit);
+        Object next = page.size() == limit ? page.get(page.size() - 1)[metadata.indexOf(pkColumn)] : null;
+
+        StringBuilder json = new StringBuilder(128 + page.size() * 64);
+        json.append("{\"columns\":");
+        appendArray(json, metadata.getColumnNames().toArray());
+        json.append(",\"rows\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendArray(json, page.get(i));
+        }
+        json.append("],\"etags\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Json.appendString(json, rowTag(page.get(i)));
+        }
+        json.append("],\"next\":");
+        Json.appendValue(json, next);
+        return json.append('}');
+    }
+
+    private static StringBuilder rows(DefaultTableModel model) {
+        StringBuilder json = new StringBuilder(128 + model.getRowCount() * 64);
+        json.append("{\"columns\":[");
+        for (int c = 0; c < model.getColumnCount(); c++) {
+            if (c > 0) {
+                json.append(',');
+            }
+            Json.appendString(json, model.getColumnName(c));
+        }
+        json.append("],\"rows\":[");
+        for (int r = 0; r < model.getRowCount(); r++) {
+            json.append(r > 0 ? ",[" : "[");
+            for (int c = 0; c < model.getColumnCount(); c++) {
+                if (c > 0) {
+                    json.append(',');
+                }
+                Json.appendValue(json, model.getValueAt(r, c));
+            }
+            json.append(']');
+        }
+        return json.append("],\"next\":null}");
+    }
+
+    private static void appendArray(StringBuilder json, Object[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Json.appendValue(json, values[i]);
+        }
+        json.append(']');
+    }
+
+    private static int limit(Map<String, String> query) {
+        String limit = query.get("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limit)));
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Invalid limit " + limit);
+        }
+    }
+
+    private static String requirePrimaryKey(String table, TableMetadata metadata) {
+        String pkColumn = metadata.getPrimaryKeyColumn();
+        if (pkColumn == null) {
+            throw new HttpError(400, "Table " + table + " has no single-column primary key");
+        }
+        return pkColumn;
+    }
+
+    // Appends the body's columns, spelled as in the metadata, and their values
+    private static void readRow(HttpExchange exchange, TableMetadata metadata,
+                                Vector<String> columns, Vector<String> values) throws IOException {
+        Map<String, String> row = Json.parseObject(readBody(exchange));
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            int index = metadata.indexOf(entry.getKey());
+            if (index < 0) {
+                throw new HttpError(400, "Unknown column " + entry.getKey());
+            }
+            String column = metadata.getColumnNames().get(index);
+            if (columns.contains(column)) {
+                throw new HttpError(400, "Column " + column + " given twice");
+            }
+            columns.add(column);
+            values.add(entry.getValue());
+        }
+        if (row.isEmpty()) {
+            throw new HttpError(400, "Empty row");
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new HttpError(413, "Request body too large");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private void sendBill(HttpExchange exchange, String id, String format) throws Exception {
+        int orderId;
+        try {
+            orderId = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new HttpError(404, "Unknown order " + id);
+        }
+        boolean html = switch (format) {
+            case "html" -> true;
+            case "pdf" -> false;
+            default -> throw new HttpError(400, "Unknown format " + format);
+        };
+
+        // The PDF is stamped with the time it was rendered, so the tag comes
+        // from the bill's data, and a 304 skips reading the archive altogether
+        BillData bill = billGenerator.loadBill(orderId);
+        StringBuilder data = new StringBuilder(format).append('|').append(bill.getOrderId())
+            .append('|').append(bill.getCustomerName()).append('|').append(bill.getCustomerPhone());
+        for (BillData.Item item : bill.getItems()) {
+            data.append('|').append(item.productName()).append('|').append(item.quantity())
+                .append('|').append(item.subtotal());
+        }
+        String etag = etag(data.toString().getBytes(StandardCharsets.UTF_8));
+        if (notModified(exchange, etag)) {
+            return;
+        }
+
+        byte[] body = billGenerator.getBill(bill, html ? BillGenerator.Format.HTML : BillGenerator.Format.PDF);
+        exchange.getResponseHeaders().set("Content-Disposition",
+            "inline; filename=\"bill_" + orderId + (html ? ".html\"" : ".pdf\""));
+        send(exchange, 200, html ? "text/html; charset=utf-8" : "application/pdf", new Body(body, etag));
+    }
+
+    private static void sendJson(HttpExchange exchange, CharSequence json) throws IOException {
+        sendJson(exchange, Body.tagged(json));
+    }
+
+    private static void sendJson(HttpExchange exchange, Body body) throws IOException {
+        if (!notModified(exchange, body.etag)) {
+            send(exchange, 200, JSON, body);
+        }
+    }
+
+    private static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            // A gzipped response was tagged with a -gz suffix
+            if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipTag(etag))) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, Body body)
+            throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        headers.set("Content-Type", contentType);
+        headers.set("Vary", "Accept-Encoding");
+        byte[] bytes = body.bytes;
+        String etag = body.etag;
+        if (bytes.length >= GZIP_MIN_BYTES && acceptsGzip(exchange)) {
+            bytes = body.gzipped();
+            headers.set("Content-Encoding", "gzip");
+            if (etag != null) {
+                etag = gzipTag(etag);
+            }
+        }
+        if (etag != null) {
+            headers.set("ETag", etag);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendValue(json, message);
+        send(exchange, status, JSON, new Body(json.append('}').toString().getBytes(StandardCharsets.UTF_8), null));
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accept != null && accept.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return '"' + HexFormat.of().formatHex(digest, 0, 12) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String gzipTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    // Validation failures come without an SQLState; 22xxx is bad data,
+    // 23xxx a constraint violation, 02000 a row that does not exist
+    private static int statusOf(SQLException e) {
+        String state = e.getSQLState();
+        if (state == null || state.startsWith("22")) {
+            return 400;
+        }
+        if (state.equals("02000")) {
+            return 404;
+        }
+        return state.startsWith("23") ? 409 : 500;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        String raw = exchange.getRequestURI().getRawQuery();
+        Map<String, String> params = new HashMap<>();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+                }
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String text) {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    // A response body with its tag, if any, and its gzipped form once a
+    // client has asked for it
+    private static final class Body {
+        final byte[] bytes;
+        final String etag;
+        private volatile byte[] gzipped;
+
+        Body(byte[] bytes, String etag) {
+            this.bytes = bytes;
+            this.etag = etag;
+        }
+
+        static Body tagged(CharSequence json) {
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            return new Body(bytes, etag(bytes));
+        }
+
+        byte[] gzipped() throws IOException {
+            byte[] result = gzipped;
+            if (result == null) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(bytes);
+                }
+                result = compressed.toByteArray();
+                gzipped = result;
+            }
+            return result;
+        }
+    }
+
+    private static final class HttpError extends RuntimeException {
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
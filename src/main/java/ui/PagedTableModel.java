@@ -0,0 +1,278 @@
+package ui;
+
+import dao.AsyncPharmacyDAO;
+import dao.TableChangeFeed;
+import dao.TableMetadata;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Table model that loads rows lazily, one page at a time, as the JTable asks
+ * for them. Pages are read with keyset pagination on the primary key and
+ * only the most recently used pages are kept, so memory stays bounded no
+ * matter how large the table is.
+ *
+ * All state is confined to the Event Dispatch Thread; pages are fetched
+ * through {@link AsyncPharmacyDAO} and handed back on the EDT.
+ */
+public class PagedTableModel extends AbstractTableModel {
+    private static final int MAX_CACHED_PAGES = 6;
+
+    private final AsyncPharmacyDAO dao;
+    private final String tableName;
+    private final String pkColumn;
+    private final int pageSize;
+    private final List<String> columnNames;
+    private final int pkIndex;
+    private int rowCount;
+
+    private final Map<Integer, List<Object[]>> pages =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+    // First primary key of every page seen so far, lets far jumps use keyset reads
+    private final Map<Integer, Object> pageStartKeys = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    // Bumped when pages are dropped after an edit, so reads already in flight are discarded
+    private int generation;
+
+    /**
+     * The metadata and row count are loaded by the caller, typically off the
+     * EDT, so constructing the model never touches the database.
+     */
+    public PagedTableModel(AsyncPharmacyDAO dao, TableMetadata metadata, int rowCount, int pageSize) {
+        this.dao = dao;
+        this.tableName = metadata.getTableName();
+        this.pkColumn = metadata.getPrimaryKeyColumn();
+        this.pageSize = pageSize;
+        this.columnNames = metadata.getColumnNames();
+        this.pkIndex = metadata.indexOf(pkColumn);
+        this.rowCount = rowCount;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames.get(column);
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int page = rowIndex / pageSize;
+        List<Object[]> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = rowIndex % pageSize;
+        return offset < rows.size() ? rows.get(offset)[columnIndex] : null;
+    }
+
+    /**
+     * Replaces the cached copy of the row with the same key, if its page is
+     * loaded. A page that is not loaded will be read fresh anyway.
+     */
+    public void updateRow(Object[] row) {
+        int index = indexOf(row[pkIndex]);
+        if (index >= 0) {
+            replace(index, row);
+        }
+    }
+
+    /** Takes out the row with the key; the pages from its page onwards are read again when shown. */
+    public void removeRow(Object key) {
+        int index = indexOf(key);
+        int page = index >= 0 ? index / pageSize : pageOf(key);
+        rowCount--;
+        dropPagesFrom(page);
+        if (index >= 0) {
+            fireTableRowsDeleted(index, index);
+        } else {
+            fireTableRowsDeleted(rowCount, rowCount);
+            fireTableRowsUpdated(page * pageSize, rowCount - 1);
+        }
+    }
+
+    /**
+     * Adds a newly inserted row. The pages from the one its key falls into
+     * onwards are read again when shown, which for a generated key is just
+     * the last page.
+     */
+    public void addRow(Object[] row) {
+        int page = pageOf(row[pkIndex]);
+        rowCount++;
+        dropPagesFrom(page);
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+        fireTableRowsUpdated(page * pageSize, rowCount - 1);
+    }
+
+    /**
+     * Applies a poll from the table's change feed. Loaded rows that changed
+     * are replaced in place. When rows came or went, the row count is taken
+     * from the poll and the pages from the first affected one onwards are
+     * read again, or all of them when the change was outside the view.
+     */
+    public void applyChanges(TableChangeFeed.Changes changes) {
+        int firstMoved = Integer.MAX_VALUE;
+        Set<String> windowKeys = new HashSet<>();
+        for (Object[] row : changes.window()) {
+            windowKeys.add(row[pkIndex].toString());
+            firstMoved = Math.min(firstMoved, replaceOrLocate(row));
+        }
+        if (changes.fromKey() != null) {
+            for (Map.Entry<Integer, List<Object[]>> entry : pages.entrySet()) {
+                for (Object[] row : entry.getValue()) {
+                    Object key = row[pkIndex];
+                    if (TableChangeFeed.compareKeys(key, changes.fromKey()) >= 0
+                            && TableChangeFeed.compareKeys(key, changes.toKey()) <= 0
+                            && !windowKeys.contains(key.toString())) {
+                        firstMoved = Math.min(firstMoved, entry.getKey());
+                    }
+                }
+            }
+        }
+        for (Object[] row : changes.updated()) {
+            int index = indexOf(row[pkIndex]);
+            if (index >= 0) {
+                replace(index, row);
+            }
+        }
+        for (Object[] row : changes.inserted()) {
+            firstMoved = Math.min(firstMoved, replaceOrLocate(row));
+        }
+
+        int oldCount = rowCount;
+        if (firstMoved == Integer.MAX_VALUE && !changes.overflow() && changes.rowCount() == oldCount) {
+            return;
+        }
+        if (firstMoved == Integer.MAX_VALUE || changes.overflow()) {
+            firstMoved = 0;
+        }
+        rowCount = changes.rowCount();
+        dropPagesFrom(firstMoved);
+        if (rowCount > oldCount) {
+            fireTableRowsInserted(oldCount, rowCount - 1);
+        } else if (rowCount < oldCount) {
+            fireTableRowsDeleted(rowCount, oldCount - 1);
+        }
+        if (rowCount > firstMoved * pageSize) {
+            fireTableRowsUpdated(firstMoved * pageSize, rowCount - 1);
+        }
+    }
+
+    // Replaces the loaded copy of the row and returns MAX_VALUE, or returns the page a new key falls into
+    private int replaceOrLocate(Object[] row) {
+        int index = indexOf(row[pkIndex]);
+        if (index < 0) {
+            return pageOf(row[pkIndex]);
+        }
+        replace(index, row);
+        return Integer.MAX_VALUE;
+    }
+
+    private void replace(int index, Object[] row) {
+        List<Object[]> rows = pages.get(index / pageSize);
+        if (!Arrays.equals(rows.get(index % pageSize), row)) {
+            rows.set(index % pageSize, row);
+            fireTableRowsUpdated(index, index);
+        }
+    }
+
+    // Position of the key among the loaded rows, or -1
+    private int indexOf(Object key) {
+        for (Map.Entry<Integer, List<Object[]>> entry : pages.entrySet()) {
+            List<Object[]> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (sameKey(rows.get(i)[pkIndex], key)) {
+                    return entry.getKey() * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // The last page known to start at or before the key; rows from there on may shift
+    private int pageOf(Object key) {
+        int page = 0;
+        for (Map.Entry<Integer, Object> entry : pageStartKeys.entrySet()) {
+            if (entry.getKey() > page && TableChangeFeed.compareKeys(entry.getValue(), key) <= 0) {
+                page = entry.getKey();
+            }
+        }
+        return page;
+    }
+
+    // The page's own start key stays valid, rows are read from it inclusively and the edit was at or
+    // after it; the first page is read from the top instead, a new key may sort before its old start
+    private void dropPagesFrom(int page) {
+        pages.keySet().removeIf(p -> p >= page);
+        pageStartKeys.keySet().removeIf(p -> p > page || p == 0);
+        generation++;
+    }
+
+    private static boolean sameKey(Object a, Object b) {
+        return a != null && b != null && a.toString().equals(b.toString());
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) {
+            return;
+        }
+
+        // Continue from the previous page when we have it, otherwise from a known start key
+        List<Object[]> previous = pages.get(page - 1);
+        Object startKey = pageStartKeys.get(page);
+        CompletableFuture<List<Object[]>> future;
+        if (previous != null && !previous.isEmpty() && pkIndex >= 0) {
+            Object lastKey = previous.get(previous.size() - 1)[pkIndex];
+            future = dao.getTablePage(tableName, pkColumn, lastKey, false, pageSize);
+        } else if (startKey != null) {
+            future = dao.getTablePage(tableName, pkColumn, startKey, true, pageSize);
+        } else {
+            future = dao.getTablePageAt(tableName, pkColumn, (long) page * pageSize, pageSize);
+        }
+
+        int requested = generation;
+        SwingAsync.onEdt(future, rows -> {
+            loading.remove(page);
+            int first = page * pageSize;
+            int last = Math.min(first + pageSize, rowCount) - 1;
+            if (requested != generation) {
+                // Read before an edit moved rows around; repainting asks for the page again
+                if (last >= first) {
+                    fireTableRowsUpdated(first, last);
+                }
+                return;
+            }
+            pages.put(page, rows);
+            if (!rows.isEmpty() && pkIndex >= 0) {
+                pageStartKeys.put(page, rows.get(0)[pkIndex]);
+            }
+            if (last >= first) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, error -> {
+            loading.remove(page);
+            error.printStackTrace();
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package ui;
+
+import dao.AsyncPharmacyDAO;
+import dao.BillGenerator;
+import dao.SalesAnalytics;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Sales and stock overview read from {@link SalesAnalytics}, so opening it
+ * costs an incremental refresh rather than a scan of the order history.
+ */
+public class SalesDashboard extends JDialog {
+    private static final int DAYS = 30;
+    private static final int TOP = 20;
+    private static final int LOW_STOCK = Integer.getInteger("pharma.analytics.lowStock", 10);
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final AsyncPharmacyDAO async;
+    private final DefaultTableModel daily = model("Date", "Units", "Revenue");
+    private final DefaultTableModel products = model("Product ID", "Product", "Units", "Revenue");
+    private final DefaultTableModel customers = model("Customer ID", "Units", "Revenue");
+    private final DefaultTableModel lowStock = model("Product ID", "Product", "Stock");
+    private final JLabel status = new JLabel("Loading...");
+    private final JButton refreshBtn = new JButton("Refresh");
+
+    private record Figures(List<SalesAnalytics.DailySales> daily, List<SalesAnalytics.ProductSales> products,
+                           List<SalesAnalytics.CustomerRevenue> customers, List<SalesAnalytics.StockLevel> lowStock) {
+    }
+
+    public SalesDashboard(Frame owner, AsyncPharmacyDAO async) {
+        super(owner, "Sales Dashboard", false);
+        this.async = async;
+        setSize(700, 450);
+        setLocationRelativeTo(owner);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Daily sales (" + DAYS + " days)", new JScrollPane(new JTable(daily)));
+        tabs.addTab("Top products (" + DAYS + " days)", new JScrollPane(new JTable(products)));
+        tabs.addTab("Top customers", new JScrollPane(new JTable(customers)));
+        tabs.addTab("Low stock (< " + LOW_STOCK + ")", new JScrollPane(new JTable(lowStock)));
+
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        bottom.add(refreshBtn);
+        bottom.add(status);
+
+        add(tabs, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+
+        refreshBtn.addActionListener(_ -> load());
+        load();
+    }
+
+    private void load() {
+        refreshBtn.setEnabled(false);
+        SwingAsync.onEdt(async.submit(() -> {
+            SalesAnalytics.refresh();
+            LocalDate to = LocalDate.now();
+            LocalDate from = to.minusDays(DAYS - 1);
+            return new Figures(SalesAnalytics.getDailySales(from, to), SalesAnalytics.getTopProducts(from, to, TOP),
+                SalesAnalytics.getTopCustomers(TOP), SalesAnalytics.getLowStock(LOW_STOCK));
+        }), this::display, e -> {
+            refreshBtn.setEnabled(true);
+            status.setText("Error: " + e.getMessage());
+        });
+    }
+
+    private void display(Figures figures) {
+        daily.setRowCount(0);
+        for (SalesAnalytics.DailySales day : figures.daily()) {
+            daily.addRow(new Object[]{day.date(), day.units(), BillGenerator.formatMoney(day.revenue())});
+        }
+        products.setRowCount(0);
+        for (SalesAnalytics.ProductSales product : figures.products()) {
+            products.addRow(new Object[]{product.productId(), product.name(), product.units(),
+                BillGenerator.formatMoney(product.revenue())});
+        }
+        customers.setRowCount(0);
+        for (SalesAnalytics.CustomerRevenue customer : figures.customers()) {
+            customers.addRow(new Object[]{customer.customerId(), customer.units(),
+                BillGenerator.formatMoney(customer.revenue())});
+        }
+        lowStock.setRowCount(0);
+        for (SalesAnalytics.StockLevel level : figures.lowStock()) {
+            lowStock.addRow(new Object[]{level.productId(), level.name(), level.stock()});
+        }
+        refreshBtn.setEnabled(true);
+        status.setText("Updated " + TIME_FORMAT.format(
+            LocalDateTime.ofInstant(SalesAnalytics.getRefreshedAt(), ZoneId.systemDefault())));
+    }
+
+    private static DefaultTableModel model(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package ui;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Hands the outcome of background work back to the Event Dispatch Thread.
+ */
+public final class SwingAsync {
+    private SwingAsync() {
+    }
+
+    /**
+     * Runs onSuccess or onError on the EDT once the future completes.
+     * Cancelled futures are dropped silently, since they were superseded.
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<? super T> onSuccess,
+                                 Consumer<Throwable> onError) {
+        future.whenCompleteAsync((result, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                onError.accept(unwrap(error));
+            } else {
+                onSuccess.accept(result);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
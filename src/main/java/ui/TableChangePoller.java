@@ -0,0 +1,200 @@
+package ui;
+
+import dao.AsyncPharmacyDAO;
+import dao.TableChangeFeed;
+
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps an open grid current with what other counters write. Every few
+ * seconds it polls the table's {@link TableChangeFeed} with the key range
+ * in view and applies the differences as row events, so only rows that
+ * changed are repainted and nothing is read twice.
+ *
+ * Paged tables apply the poll themselves. Fully loaded tables get their
+ * rows replaced, added and removed here; rows deleted outside the view
+ * can only be found by reading the table again, so they trigger a reload.
+ * Polling pauses while database search results replace the grid.
+ */
+public class TableChangePoller {
+    // Pause between polls, -Dpharma.changes.pollMs=0 turns polling off
+    private static final int POLL_MS = Integer.getInteger("pharma.changes.pollMs", 3000);
+
+    private final AsyncPharmacyDAO async;
+    private final JTable table;
+    private final Runnable onRowsChanged;
+    private final Runnable onReloadNeeded;
+    private final Timer timer;
+
+    private TableModel watched;
+    private TableChangeFeed feed;
+    private boolean polling;
+
+    /**
+     * onRowsChanged runs after rows of a fully loaded table changed, e.g. to
+     * rebuild a search index; onReloadNeeded when the changes cannot be
+     * applied row by row.
+     */
+    public TableChangePoller(AsyncPharmacyDAO async, JTable table, Runnable onRowsChanged, Runnable onReloadNeeded) {
+        this.async = async;
+        this.table = table;
+        this.onRowsChanged = onRowsChanged;
+        this.onReloadNeeded = onReloadNeeded;
+        this.timer = new Timer(Math.max(POLL_MS, 1), _ -> poll());
+    }
+
+    /** Follows the model, which was loaded after the feed was opened; a null feed stops polling. */
+    public void watch(TableModel model, TableChangeFeed feed) {
+        this.watched = model;
+        this.feed = feed;
+        if (feed != null && POLL_MS > 0) {
+            timer.restart();
+        } else {
+            timer.stop();
+        }
+    }
+
+    public void stop() {
+        timer.stop();
+        watched = null;
+        feed = null;
+    }
+
+    private void poll() {
+        if (polling || feed == null || table.getModel() != watched) {
+            return;
+        }
+        TableModel polled = watched;
+        TableChangeFeed polledFeed = feed;
+        Object[] range = visibleKeyRange(polledFeed.getPkIndex());
+        polling = true;
+        SwingAsync.onEdt(async.submit(() -> polledFeed.poll(range[0], range[1])), changes -> {
+            polling = false;
+            if (watched != polled) {
+                return;
+            }
+            if (polled instanceof PagedTableModel paged) {
+                paged.applyChanges(changes);
+            } else if (polled instanceof DefaultTableModel loaded) {
+                apply(loaded, changes, polledFeed.getPkIndex());
+            }
+        }, e -> {
+            polling = false;
+            e.printStackTrace();
+        });
+    }
+
+    // Smallest and largest key among the rows on screen, both null when none is loaded
+    private Object[] visibleKeyRange(int pkIndex) {
+        Rectangle view = table.getVisibleRect();
+        if (view.isEmpty()) {
+            return new Object[2];
+        }
+        int first = table.rowAtPoint(view.getLocation());
+        if (first < 0) {
+            return new Object[2];
+        }
+        int last = table.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+        if (last < 0) {
+            last = table.getRowCount() - 1;
+        }
+        Object min = null;
+        Object max = null;
+        for (int row = first; row <= last; row++) {
+            Object key = watched.getValueAt(table.convertRowIndexToModel(row), pkIndex);
+            if (key == null) {
+                continue;
+            }
+            if (min == null || TableChangeFeed.compareKeys(key, min) < 0) {
+                min = key;
+            }
+            if (max == null || TableChangeFeed.compareKeys(key, max) > 0) {
+                max = key;
+            }
+        }
+        return new Object[]{min, max};
+    }
+
+    private void apply(DefaultTableModel model, TableChangeFeed.Changes changes, int pkIndex) {
+        if (changes.overflow()) {
+            onReloadNeeded.run();
+            return;
+        }
+        Map<String, Integer> rowsByKey = new HashMap<>();
+        for (int i = 0; i < model.getRowCount(); i++) {
+            rowsByKey.put(String.valueOf(model.getValueAt(i, pkIndex)), i);
+        }
+
+        boolean changed = false;
+        Set<String> windowKeys = new HashSet<>();
+        for (Object[] row : changes.window()) {
+            windowKeys.add(row[pkIndex].toString());
+        }
+        List<Integer> deleted = new ArrayList<>();
+        if (changes.fromKey() != null) {
+            for (Map.Entry<String, Integer> entry : rowsByKey.entrySet()) {
+                Object key = model.getValueAt(entry.getValue(), pkIndex);
+                if (TableChangeFeed.compareKeys(key, changes.fromKey()) >= 0
+                        && TableChangeFeed.compareKeys(key, changes.toKey()) <= 0
+                        && !windowKeys.contains(entry.getKey())) {
+                    deleted.add(entry.getValue());
+                }
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(changes.window());
+        rows.addAll(changes.inserted());
+        rows.addAll(changes.updated());
+        for (Object[] row : rows) {
+            Integer index = rowsByKey.get(row[pkIndex].toString());
+            if (index == null) {
+                model.addRow(row);
+                rowsByKey.put(row[pkIndex].toString(), model.getRowCount() - 1);
+                changed = true;
+            } else {
+                changed |= replace(model, index, row);
+            }
+        }
+        // Highest index first, so the indexes still to remove stay valid
+        deleted.sort(null);
+        for (int i = deleted.size() - 1; i >= 0; i--) {
+            model.removeRow(deleted.get(i));
+            changed = true;
+        }
+
+        if (model.getRowCount() != changes.rowCount()) {
+            onReloadNeeded.run();
+        } else if (changed) {
+            onRowsChanged.run();
+        }
+    }
+
+    private static boolean replace(DefaultTableModel model, int index, Object[] row) {
+        Object[] current = new Object[model.getColumnCount()];
+        for (int column = 0; column < current.length; column++) {
+            current[column] = model.getValueAt(index, column);
+        }
+        if (Arrays.equals(current, row)) {
+            return false;
+        }
+        for (int column = 0; column < row.length; column++) {
+            if (!Objects.equals(current[column], row[column])) {
+                model.setValueAt(row[column], index, column);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,188 @@
+package ui;
+
+import javax.swing.table.TableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Search index over the rows of a fully loaded table model, built once and
+ * queried on every keystroke.
+ *
+ * Queries of three characters or more are substring matches answered from
+ * a trigram index: the posting lists of the query's trigrams are
+ * intersected and only the surviving rows are checked. Shorter queries
+ * match the start of words through a sorted word list. Matching ignores
+ * case. The index is a snapshot; build a new one when the model changes.
+ */
+public class TableSearchIndex {
+    private static final int GRAM = 3;
+
+    private final int rowCount;
+    private final int columnCount;
+    // Lower-case text of every cell, [row][column]
+    private final String[][] cells;
+    private final Map<Long, IntList> grams = new HashMap<>();
+    // Every word of every cell, sorted, with the row and column it came from
+    private final String[] words;
+    private final int[] wordRows;
+    private final int[] wordColumns;
+
+    private TableSearchIndex(TableModel model) {
+        rowCount = model.getRowCount();
+        columnCount = model.getColumnCount();
+        cells = new String[rowCount][columnCount];
+
+        List<Word> wordList = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                Object value = model.getValueAt(row, column);
+                String text = value == null ? "" : value.toString().toLowerCase(Locale.ROOT);
+                cells[row][column] = text;
+                for (int i = 0; i + GRAM <= text.length(); i++) {
+                    grams.computeIfAbsent(gramKey(text, i), _ -> new IntList()).addRow(row);
+                }
+                addWords(text, row, column, wordList);
+            }
+        }
+
+        wordList.sort(Comparator.comparing(Word::text));
+        words = new String[wordList.size()];
+        wordRows = new int[wordList.size()];
+        wordColumns = new int[wordList.size()];
+        for (int i = 0; i < wordList.size(); i++) {
+            Word word = wordList.get(i);
+            words[i] = word.text();
+            wordRows[i] = word.row();
+            wordColumns[i] = word.column();
+        }
+    }
+
+    /** Indexes the model as it is now. Call on the EDT, like any other model access. */
+    public static TableSearchIndex build(TableModel model) {
+        return new TableSearchIndex(model);
+    }
+
+    /**
+     * Model rows matching the query in the given column, or in any column
+     * when column is negative. Returns null for a blank query, meaning no
+     * filter.
+     */
+    public BitSet search(String query, int column) {
+        String text = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (text.isEmpty()) {
+            return null;
+        }
+        if (column >= columnCount) {
+            return new BitSet();
+        }
+        return text.length() >= GRAM ? searchSubstring(text, column) : searchWordPrefix(text, column);
+    }
+
+    private BitSet searchSubstring(String text, int column) {
+        // Intersect starting from the rarest trigram, the candidate set only shrinks
+        IntList[] lists = new IntList[text.length() - GRAM + 1];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = grams.get(gramKey(text, i));
+            if (lists[i] == null) {
+                return new BitSet();
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+        BitSet candidates = lists[0].toBitSet(rowCount);
+        for (int i = 1; i < lists.length && !candidates.isEmpty(); i++) {
+            candidates.and(lists[i].toBitSet(rowCount));
+        }
+
+        // Trigrams can match out of order, confirm each candidate
+        BitSet matches = new BitSet(rowCount);
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            if (rowContains(row, text, column)) {
+                matches.set(row);
+            }
+        }
+        return matches;
+    }
+
+    private boolean rowContains(int row, String text, int column) {
+        if (column >= 0) {
+            return cells[row][column].contains(text);
+        }
+        for (String cell : cells[row]) {
+            if (cell.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BitSet searchWordPrefix(String text, int column) {
+        BitSet matches = new BitSet(rowCount);
+        int low = 0, high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(text) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < words.length && words[i].startsWith(text); i++) {
+            if (column < 0 || wordColumns[i] == column) {
+                matches.set(wordRows[i]);
+            }
+        }
+        return matches;
+    }
+
+    private record Word(String text, int row, int column) {
+    }
+
+    private static void addWords(String text, int row, int column, List<Word> words) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(new Word(text.substring(start, i), row, column));
+                start = -1;
+            }
+        }
+    }
+
+    // Three UTF-16 chars packed into one long, avoids a substring per trigram
+    private static long gramKey(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    // Ascending row numbers, each at most once
+    private static final class IntList {
+        private int[] rows = new int[4];
+        private int size;
+
+        void addRow(int row) {
+            if (size > 0 && rows[size - 1] == row) {
+                return;
+            }
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        BitSet toBitSet(int rowCount) {
+            BitSet bits = new BitSet(rowCount);
+            for (int i = 0; i < size; i++) {
+                bits.set(rows[i]);
+            }
+            return bits;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * UTF-8 text output to a file channel through one reusable byte buffer,
+ * optionally gzip compressed. Text is encoded straight into the buffer,
+ * which is written out whenever it fills, so memory use is fixed however
+ * much is written. close() forces the file to disk. Not thread-safe.
+ */
+public final class ChannelTextWriter implements Closeable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final GZIPOutputStream gzip;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    public ChannelTextWriter(Path path, boolean compress) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+        gzip = compress ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) : null;
+    }
+
+    public void write(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, true);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        if (gzip != null) {
+            gzip.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        } else {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+            if (gzip != null) {
+                gzip.finish();
+                gzip.flush();
+            }
+            channel.force(true);
+        } finally {
+            // Closing the gzip stream closes the channel too
+            if (gzip != null) {
+                gzip.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+}
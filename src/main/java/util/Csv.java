@@ -0,0 +1,263 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 CSV support: comma separated, fields optionally quoted
+ * with double quotes, quotes inside a quoted field doubled, and line breaks
+ * allowed inside quoted fields.
+ */
+public final class Csv {
+    private Csv() {
+    }
+
+    /**
+     * Thrown by {@link Reader#readRecord} for a record that cannot be parsed.
+     * The reader has already moved on to the next line, so reading can
+     * continue past it.
+     */
+    public static final class MalformedRecordException extends IOException {
+        private final long line;
+        private final String text;
+
+        MalformedRecordException(String message, long line, String text) {
+            super(message + " on line " + line);
+            this.line = line;
+            this.text = text;
+        }
+
+        /** Line on which the malformed record started, counting from 1. */
+        public long getLine() {
+            return line;
+        }
+
+        /** The malformed record's first line as it appeared in the input. */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Streaming record reader with its own char buffer, so memory use does
+     * not depend on the file size and characters are not read one call at a
+     * time from the underlying reader.
+     */
+    public static final class Reader implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final java.io.Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long line = 1;
+        private long recordLine;
+        private boolean started;
+        private final StringBuilder field = new StringBuilder(64);
+        // Positions in field of quotes that were doubled in the input
+        private final BitSet doubledQuotes = new BitSet();
+        // Input handed back after a malformed record, read before the buffer
+        private String pushback;
+        private int pushbackPosition;
+
+        public Reader(java.io.Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * The next record's fields, unquoted, or null at the end of input.
+         * A quoted field left open until the end of input throws
+         * MalformedRecordException and reading resumes on the line after the
+         * one it started on.
+         */
+        public List<String> readRecord() throws IOException {
+            int c = read();
+            if (!started) {
+                started = true;
+                if (c == '\uFEFF') {
+                    c = read();
+                }
+            }
+            if (c == -1) {
+                return null;
+            }
+
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (c == '"' && field.isEmpty() && !quoted) {
+                    quoted = true;
+                    long start = line;
+                    if (!readQuoted()) {
+                        throw resync(start, fields);
+                    }
+                    c = read();
+                    continue;
+                }
+                if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c == '\n' || c == '\r' || c == -1) {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    if (c != -1) {
+                        line++;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        // Reads up to and including the closing quote, false if the input ends first
+        private boolean readQuoted() throws IOException {
+            doubledQuotes.clear();
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    return false;
+                }
+                if (c == '"') {
+                    if (peek() != '"') {
+                        return true;
+                    }
+                    read();
+                    doubledQuotes.set(field.length());
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            }
+        }
+
+        // The open quote ran to the end of input: everything after the line it
+        // started on goes back to be read again as records of its own
+        private MalformedRecordException resync(long start, List<String> fields) {
+            int end = 0;
+            while (end < field.length() && field.charAt(end) != '\n' && field.charAt(end) != '\r') {
+                end++;
+            }
+            int next = end;
+            if (next < field.length() && field.charAt(next) == '\r') {
+                next++;
+            }
+            if (next < field.length() && field.charAt(next) == '\n') {
+                next++;
+            }
+            StringBuilder text = new StringBuilder();
+            for (String value : fields) {
+                appendField(text, value);
+                text.append(',');
+            }
+            text.append('"');
+            appendRaw(text, 0, end);
+            StringBuilder rest = new StringBuilder(field.length() - next);
+            appendRaw(rest, next, field.length());
+            pushback = rest.isEmpty() ? null : rest.toString();
+            pushbackPosition = 0;
+            line = start + 1;
+            field.setLength(0);
+            return new MalformedRecordException("Unterminated quoted field", start, text.toString());
+        }
+
+        // Part of the quoted field as it was in the input
+        private void appendRaw(StringBuilder out, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (doubledQuotes.get(i)) {
+                    out.append('"');
+                }
+                out.append(field.charAt(i));
+            }
+        }
+
+        /** Line on which the last record returned by readRecord started, counting from 1. */
+        public long getRecordLine() {
+            return recordLine;
+        }
+
+        private int read() throws IOException {
+            if (pushback != null) {
+                char c = pushback.charAt(pushbackPosition++);
+                if (pushbackPosition == pushback.length()) {
+                    pushback = null;
+                }
+                return c;
+            }
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (pushback != null) {
+                return pushback.charAt(pushbackPosition);
+            }
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Appends one field, quoted only when it contains a comma, quote or line break. Null is written empty. */
+    public static void appendField(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    /** Appends the fields as one record, including the trailing line break. */
+    public static void appendRecord(StringBuilder out, List<String> values) {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendField(out, values.get(i));
+        }
+        out.append('\n');
+    }
+}
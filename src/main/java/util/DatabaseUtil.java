@@ -1,14 +1,173 @@
 package util;
 
 import config.DatabaseConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Connection pools for the primary database and, when
+ * -Dpharma.db.replicas lists their JDBC URLs (comma separated, same user
+ * and password), for read replicas.
+ *
+ * Writes and anything that must see them use {@link #getConnection()},
+ * which is always the primary. Reads that can be a moment behind use
+ * {@link #getReadConnection()}, which takes the healthy replicas in turn.
+ * A replica is left out when it cannot be reached or, on MySQL, when it
+ * reports more than -Dpharma.db.maxReplicaLagMs of replication lag; it is
+ * checked again every -Dpharma.db.replicaCheckMs. Leaving a reachable
+ * replica out, for lag, stopped replication or a status query it refuses,
+ * is logged, as is its return. After this process
+ * writes, reads go to the primary too for -Dpharma.db.readYourWritesMs or
+ * the allowed lag, whichever is longer, so the counter does not read a
+ * replica that has not caught up with its own change. That matters beyond
+ * the read itself: QueryCache and ProductCatalog keep what they read, and a
+ * stale replica result would hide the edit until they expire. With no
+ * replica every read goes to the primary.
+ */
 public class DatabaseUtil {
-    private static Connection connection = null;
-    
-    static {
+    // Connection settings from DatabaseConfig, overridable with -Dpharma.db.url/user/password
+    private static final String DB_URL = System.getProperty("pharma.db.url", DatabaseConfig.DB_URL);
+    private static final String DB_USER = System.getProperty("pharma.db.user", DatabaseConfig.USER);
+    private static final String DB_PASS = System.getProperty("pharma.db.password", DatabaseConfig.PASS);
+    private static final String REPLICA_URLS = System.getProperty("pharma.db.replicas", "");
+    private static final long MAX_REPLICA_LAG_MS = Long.getLong("pharma.db.maxReplicaLagMs", 5_000);
+    // Never shorter than the lag a replica is allowed, or a read could still miss the write
+    private static final long READ_YOUR_WRITES_NANOS = TimeUnit.MILLISECONDS.toNanos(
+        Math.max(Long.getLong("pharma.db.readYourWritesMs", 2_000), MAX_REPLICA_LAG_MS));
+    private static final long REPLICA_CHECK_MS = Long.getLong("pharma.db.replicaCheckMs", 5_000);
+    // A replica that does not hand out a connection this fast is skipped rather than waited for
+    private static final long REPLICA_ACQUIRE_TIMEOUT_MS = Long.getLong("pharma.db.replicaAcquireTimeoutMs", 1_000);
+
+    // Pool settings, each can be overridden with -Dpharma.pool.<name>=<value>
+    private static final int MIN_IDLE = Integer.getInteger("pharma.pool.minIdle", 2);
+    private static final int MAX_SIZE = Integer.getInteger("pharma.pool.maxSize", 10);
+    private static final long ACQUIRE_TIMEOUT_MS = Long.getLong("pharma.pool.acquireTimeoutMs", 10_000);
+    private static final long VALIDATION_TIMEOUT_MS = Long.getLong("pharma.pool.validationTimeoutMs", 3_000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("pharma.pool.idleTimeoutMs", 300_000);
+    private static final long MAX_LIFETIME_MS = Long.getLong("pharma.pool.maxLifetimeMs", 1_800_000);
+
+    private static volatile HikariDataSource dataSource = null;
+    private static volatile List<Replica> replicas = null;
+    private static ScheduledExecutorService replicaChecker;
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+    private static volatile long lastWriteNanos = System.nanoTime() - READ_YOUR_WRITES_NANOS;
+
+    // Time callers spent waiting for a connection from the pool
+    private static final LongAdder acquireCount = new LongAdder();
+    private static final LongAdder acquireWaitNanos = new LongAdder();
+    private static final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+
+    private static final Metrics.Timer ACQUIRE_TIMER = Metrics.timer("pool.acquire");
+    private static final Metrics.Timer CONNECT_TIMER = Metrics.timer("pool.connect");
+    private static final Metrics.Timer USAGE_TIMER = Metrics.timer("pool.usage");
+    private static final Metrics.Timer REPLICA_ACQUIRE_TIMER = Metrics.timer("pool.acquireReplica");
+
+    private DatabaseUtil() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing the connection returns it
+     * to the pool instead of closing the physical link.
+     */
+    public static Connection getConnection() throws SQLException {
+        HikariDataSource ds = getDataSource();
+        long start = System.nanoTime();
+        Connection conn;
+        try {
+            conn = ds.getConnection();
+        } catch (SQLException e) {
+            ACQUIRE_TIMER.record(System.nanoTime() - start, false);
+            throw e;
+        }
+        long waited = System.nanoTime() - start;
+        ACQUIRE_TIMER.record(waited, true);
+
+        acquireCount.increment();
+        acquireWaitNanos.add(waited);
+        maxAcquireWaitNanos.accumulateAndGet(waited, Math::max);
+        return conn;
+    }
+
+    /**
+     * Borrows a connection for reading: from the next healthy replica, or
+     * from the primary when there is none, when this process wrote within
+     * the read-your-writes window or when the replica fails to connect.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        List<Replica> all = getReplicas();
+        if (all.isEmpty() || System.nanoTime() - lastWriteNanos < READ_YOUR_WRITES_NANOS) {
+            return getConnection();
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            Replica replica = all.get((start + i) % all.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            long begin = System.nanoTime();
+            try {
+                Connection conn = replica.dataSource.getConnection();
+                REPLICA_ACQUIRE_TIMER.record(System.nanoTime() - begin, true);
+                replica.reads.increment();
+                return conn;
+            } catch (SQLException e) {
+                REPLICA_ACQUIRE_TIMER.record(System.nanoTime() - begin, false);
+                // Left out until the next check finds it back
+                replica.healthy = false;
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * Records that this process wrote to the primary, which keeps its reads
+     * on the primary for the read-your-writes window.
+     */
+    public static void markWritten() {
+        lastWriteNanos = System.nanoTime();
+    }
+
+    public static HikariDataSource getDataSource() {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (DatabaseUtil.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = createDataSource();
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Loads the MySQL JDBC driver when the URL needs it. Done when the pool
+     * is created rather than when this class is, which keeps it off the
+     * startup path; other drivers register themselves.
+     */
+    public static void loadDriver() {
+        if (!DB_URL.startsWith("jdbc:mysql:")) {
+            return;
+        }
         try {
             // Load MySQL JDBC driver
             Class.forName("com.mysql.cj.jdbc.Driver");
@@ -17,29 +176,247 @@ public class DatabaseUtil {
             throw new RuntimeException("Failed to load MySQL JDBC driver. Make sure mysql-connector-j is in your classpath.");
         }
     }
-    
-    private DatabaseUtil() {
-        // Private constructor to prevent instantiation
+
+    private static List<Replica> getReplicas() {
+        List<Replica> all = replicas;
+        if (all == null) {
+            synchronized (DatabaseUtil.class) {
+                all = replicas;
+                if (all == null) {
+                    all = createReplicas();
+                    replicas = all;
+                }
+            }
+        }
+        return all;
     }
-    
-    public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(
-                DatabaseConfig.DB_URL,
-                DatabaseConfig.USER,
-                DatabaseConfig.PASS
-            );
+
+    // Called with the class lock held
+    private static List<Replica> createReplicas() {
+        List<Replica> all = new ArrayList<>();
+        for (String url : REPLICA_URLS.split(",")) {
+            if (!url.isBlank()) {
+                HikariDataSource ds = createDataSource("PharmaReplica" + (all.size() + 1), url.trim(), true);
+                all.add(new Replica(url.trim(), ds));
+            }
+        }
+        if (!all.isEmpty()) {
+            replicaChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<Replica> checked = List.copyOf(all);
+            replicaChecker.scheduleWithFixedDelay(() -> checked.forEach(DatabaseUtil::checkReplica),
+                REPLICA_CHECK_MS, REPLICA_CHECK_MS, TimeUnit.MILLISECONDS);
         }
-        return connection;
+        return List.copyOf(all);
     }
-    
-    public static void closeConnection() {
-        if (connection != null) {
+
+    private static void checkReplica(Replica replica) {
+        Connection conn;
+        try {
+            conn = replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            replica.healthy = false;
+            return;
+        }
+        try (conn) {
+            long lag = replicationLagMs(replica, conn);
+            replica.lagMs = lag;
+            if (!conn.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(VALIDATION_TIMEOUT_MS)))) {
+                replica.healthy = false;
+            } else if (lag == Long.MAX_VALUE) {
+                exclude(replica, "stopped", "replication is not running");
+            } else if (lag > MAX_REPLICA_LAG_MS) {
+                exclude(replica, "lag", lag + " ms behind, more than the " + MAX_REPLICA_LAG_MS + " ms allowed");
+            } else {
+                if (replica.excludedFor != null) {
+                    Log.LOG.info("Replica {} is back in use for reads", replica.url);
+                    replica.excludedFor = null;
+                }
+                replica.healthy = true;
+            }
+        } catch (SQLException e) {
+            exclude(replica, "status", "replication status query failed: " + e.getMessage());
+        }
+    }
+
+    // Reachable but not fit for reads; logged once per reason rather than on every check
+    private static void exclude(Replica replica, String reason, String detail) {
+        if (!reason.equals(replica.excludedFor)) {
+            Log.LOG.warn("Replica {} left out of reads: {}", replica.url, detail);
+            replica.excludedFor = reason;
+        }
+        replica.healthy = false;
+    }
+
+    // Lag the MySQL replica reports, 0 where it cannot be asked; a stopped replication thread counts as too far behind.
+    // Servers before MySQL 8.0.22 and MariaDB only know SHOW SLAVE STATUS, whose column is Seconds_Behind_Master
+    private static long replicationLagMs(Replica replica, Connection conn) throws SQLException {
+        if (!conn.getMetaData().getURL().startsWith("jdbc:mysql:")) {
+            return 0;
+        }
+        if (!replica.legacyStatus) {
             try {
-                connection.close();
+                return replicationLagMs(conn, "SHOW REPLICA STATUS");
             } catch (SQLException e) {
-                e.printStackTrace();
+                // 1064 is a syntax error
+                if (e.getErrorCode() != 1064) {
+                    throw e;
+                }
+                replica.legacyStatus = true;
+            }
+        }
+        return replicationLagMs(conn, "SHOW SLAVE STATUS");
+    }
+
+    private static long replicationLagMs(Connection conn, String query) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            if (!rs.next()) {
+                return 0;
+            }
+            String column = "Seconds_Behind_Master";
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (metaData.getColumnLabel(i).equalsIgnoreCase("Seconds_Behind_Source")) {
+                    column = "Seconds_Behind_Source";
+                }
+            }
+            long seconds = rs.getLong(column);
+            return rs.wasNull() ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(seconds);
+        }
+    }
+
+    private static HikariDataSource createDataSource() {
+        return createDataSource("PharmaPool", DB_URL, false);
+    }
+
+    private static HikariDataSource createDataSource(String poolName, String url, boolean replica) {
+        loadDriver();
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(url);
+        config.setUsername(DB_USER);
+        config.setPassword(DB_PASS);
+        config.setMinimumIdle(Math.min(MIN_IDLE, MAX_SIZE));
+        config.setMaximumPoolSize(MAX_SIZE);
+        config.setConnectionTimeout(replica ? REPLICA_ACQUIRE_TIMEOUT_MS : ACQUIRE_TIMEOUT_MS);
+        config.setReadOnly(replica);
+        if (replica) {
+            // A replica that is down at startup is left out by the checks instead of failing the pool
+            config.setInitializationFailTimeout(-1);
+        }
+        config.setValidationTimeout(VALIDATION_TIMEOUT_MS);
+        config.setIdleTimeout(IDLE_TIMEOUT_MS);
+        config.setMaxLifetime(MAX_LIFETIME_MS);
+        config.setRegisterMbeans(true);
+        config.setMetricsTrackerFactory((_, _) -> new PoolMetricsTracker());
+        if (url.startsWith("jdbc:mysql:")) {
+            // Honour Statement.setFetchSize() with a server-side cursor
+            config.addDataSourceProperty("useCursorFetch", "true");
+            // Send executeBatch() inserts as multi-row statements
+            config.addDataSourceProperty("rewriteBatchedStatements",
+                System.getProperty("pharma.db.rewriteBatchedStatements", "true"));
+            // Keep server-side prepared statements open per pooled connection
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", "250");
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        }
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Snapshot of the pool state. Wait times are measured around every
+     * {@link #getConnection()} call since the pool was started.
+     */
+    public static PoolStats getPoolStats() {
+        HikariDataSource ds = dataSource;
+        HikariPoolMXBean pool = ds != null ? ds.getHikariPoolMXBean() : null;
+        long count = acquireCount.sum();
+        long totalWait = acquireWaitNanos.sum();
+        return new PoolStats(
+            pool != null ? pool.getActiveConnections() : 0,
+            pool != null ? pool.getIdleConnections() : 0,
+            pool != null ? pool.getTotalConnections() : 0,
+            pool != null ? pool.getThreadsAwaitingConnection() : 0,
+            count,
+            count == 0 ? 0.0 : (double) totalWait / count / TimeUnit.MILLISECONDS.toNanos(1),
+            (double) maxAcquireWaitNanos.get() / TimeUnit.MILLISECONDS.toNanos(1)
+        );
+    }
+
+    // Physical connection opens (pool.connect, so re-connects show up) and how long callers hold connections
+    private static class PoolMetricsTracker implements IMetricsTracker {
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            CONNECT_TIMER.record(TimeUnit.MILLISECONDS.toNanos(connectionCreatedMillis), true);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            USAGE_TIMER.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis), true);
+        }
+    }
+
+    public record PoolStats(int active, int idle, int total, int waiting,
+                            long acquireCount, double avgWaitMillis, double maxWaitMillis) {
+    }
+
+    /** Each replica as last checked, with the reads it has served. */
+    public static List<ReplicaStats> getReplicaStats() {
+        List<Replica> all = replicas;
+        List<ReplicaStats> stats = new ArrayList<>();
+        if (all != null) {
+            for (Replica replica : all) {
+                stats.add(new ReplicaStats(replica.url, replica.healthy, replica.lagMs, replica.reads.sum()));
+            }
+        }
+        return stats;
+    }
+
+    public record ReplicaStats(String url, boolean healthy, long lagMs, long reads) {
+    }
+
+    // The logger is created on first use, so loading this class does not start the logging backend
+    private static final class Log {
+        static final Logger LOG = LoggerFactory.getLogger(DatabaseUtil.class);
+    }
+
+    private static final class Replica {
+        final String url;
+        final HikariDataSource dataSource;
+        final LongAdder reads = new LongAdder();
+        volatile boolean healthy = true;
+        volatile long lagMs;
+        // Only touched by the check thread
+        String excludedFor;
+        boolean legacyStatus;
+
+        Replica(String url, HikariDataSource dataSource) {
+            this.url = url;
+            this.dataSource = dataSource;
+        }
+    }
+
+    public static void closeConnection() {
+        synchronized (DatabaseUtil.class) {
+            if (dataSource != null) {
+                dataSource.close();
+                dataSource = null;
+            }
+            if (replicas != null) {
+                if (replicaChecker != null) {
+                    replicaChecker.shutdownNow();
+                    replicaChecker = null;
+                }
+                for (Replica replica : replicas) {
+                    replica.dataSource.close();
+                }
+                replicas = null;
             }
         }
     }
-} 
\ No newline at end of file
+}
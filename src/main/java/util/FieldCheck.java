@@ -0,0 +1,172 @@
+package util;
+
+import java.time.YearMonth;
+
+/**
+ * Single-field formats checked char by char instead of with a regex. Each
+ * check accepts exactly what the pattern in its comment accepts.
+ */
+public enum FieldCheck {
+    /** ^[A-Za-z\s]{2,50}$ */
+    PERSON_NAME {
+        @Override
+        public boolean test(String value) {
+            int length = value.length();
+            if (length < 2 || length > 50) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (!isAsciiLetter(c) && !isRegexSpace(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    },
+
+    /** ^\d{10}$ */
+    PHONE {
+        @Override
+        public boolean test(String value) {
+            return value.length() == 10 && allDigits(value, 0, 10);
+        }
+    },
+
+    /** ^[A-Za-z0-9+_.-]+@(.+)$ */
+    EMAIL {
+        @Override
+        public boolean test(String value) {
+            int at = value.indexOf('@');
+            if (at < 1 || at == value.length() - 1) {
+                return false;
+            }
+            for (int i = 0; i < at; i++) {
+                char c = value.charAt(i);
+                if (!isAsciiLetter(c) && !isDigit(c) && c != '+' && c != '_' && c != '.' && c != '-') {
+                    return false;
+                }
+            }
+            // '.' in the pattern matches anything but a line terminator
+            for (int i = at + 1; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    },
+
+    /** ^[A-Za-z0-9]+$ */
+    ALPHANUMERIC {
+        @Override
+        public boolean test(String value) {
+            if (value.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (!isAsciiLetter(c) && !isDigit(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    },
+
+    /** ^\d+(\.\d{1,2})?$ */
+    PRICE {
+        @Override
+        public boolean test(String value) {
+            int dot = value.indexOf('.');
+            if (dot < 0) {
+                return !value.isEmpty() && allDigits(value, 0, value.length());
+            }
+            int decimals = value.length() - dot - 1;
+            return dot > 0 && decimals >= 1 && decimals <= 2
+                && allDigits(value, 0, dot) && allDigits(value, dot + 1, value.length());
+        }
+    },
+
+    /** ^\d{1,9}$, a whole number that fits an INT */
+    COUNT {
+        @Override
+        public boolean test(String value) {
+            return !value.isEmpty() && value.length() <= 9 && allDigits(value, 0, value.length());
+        }
+    },
+
+    /** A COUNT above zero, e.g. a foreign key or a quantity */
+    POSITIVE_COUNT {
+        @Override
+        public boolean test(String value) {
+            if (!COUNT.test(value)) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) != '0') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    },
+
+    /** yyyy-M-d (one or two digit month and day) naming a real date, as MySQL reads DATE literals */
+    DATE {
+        @Override
+        public boolean test(String value) {
+            int first = value.indexOf('-');
+            int second = value.indexOf('-', first + 1);
+            int monthDigits = second - first - 1;
+            int dayDigits = value.length() - second - 1;
+            if (first != 4 || second < 0 || monthDigits < 1 || monthDigits > 2 || dayDigits < 1 || dayDigits > 2
+                    || !allDigits(value, 0, first) || !allDigits(value, first + 1, second)
+                    || !allDigits(value, second + 1, value.length())) {
+                return false;
+            }
+            int year = Integer.parseInt(value, 0, 4, 10);
+            int month = Integer.parseInt(value, first + 1, second, 10);
+            int day = Integer.parseInt(value, second + 1, value.length(), 10);
+            return month >= 1 && month <= 12 && day >= 1 && day <= YearMonth.of(year, month).lengthOfMonth();
+        }
+    },
+
+    /** Anything with a character above a space, i.e. not blank after String.trim() */
+    NOT_BLANK {
+        @Override
+        public boolean test(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > ' ') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    public abstract boolean test(String value);
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // The characters \s matches without UNICODE_CHARACTER_CLASS
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean allDigits(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
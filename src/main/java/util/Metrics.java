@@ -0,0 +1,306 @@
+package util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms, call counts and error counts for DAO methods, SQL
+ * statements, pool acquisition and bill rendering.
+ *
+ * Every timer is published over JMX as pharma:type=Timer,name=... and, when
+ * -Dpharma.metrics.logIntervalSec is positive, dumped to the log
+ * periodically. Run with -Dpharma.metrics=false to turn it off; time() then
+ * returns a shared no-op sample and nothing is recorded.
+ *
+ * <pre>
+ * try (Metrics.Sample sample = TIMER.time()) {
+ *     ...
+ *     sample.success();
+ * }
+ * </pre>
+ * A sample closed without success() counts as an error.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pharma.metrics", "true"));
+    private static final long LOG_INTERVAL_SEC = Long.getLong("pharma.metrics.logIntervalSec", 300);
+
+    // JMX registration loads the platform MBean server, long enough to hold up the first window
+    // if timers created during startup registered themselves on the spot
+    private static final ExecutorService REGISTRAR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-jmx");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> SQL_TIMERS = new ConcurrentHashMap<>();
+    private static final Timer DISABLED = new Timer("disabled");
+    private static final Sample NOOP = new Sample(null);
+    private static volatile ScheduledExecutorService logger;
+
+    private Metrics() {
+    }
+
+    /** Returns the timer with this name, creating and registering it on first use. */
+    public static Timer timer(String name) {
+        if (!ENABLED) {
+            return DISABLED;
+        }
+        Timer timer = TIMERS.get(name);
+        if (timer == null) {
+            timer = TIMERS.computeIfAbsent(name, Timer::new);
+            register(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Timer for one SQL statement text, so each generated statement is
+     * tracked separately. Keyed by the SQL itself, which the DAO takes from
+     * SchemaCache, so lookups reuse the string's cached hash.
+     */
+    public static Timer sqlTimer(String sql) {
+        if (!ENABLED) {
+            return DISABLED;
+        }
+        Timer timer = SQL_TIMERS.get(sql);
+        if (timer == null) {
+            timer = SQL_TIMERS.computeIfAbsent(sql, _ -> timer("sql " + sql));
+        }
+        return timer;
+    }
+
+    public static Map<String, Timer> getTimers() {
+        return new TreeMap<>(TIMERS);
+    }
+
+    /** Starts the periodic log dump unless disabled or already running. */
+    public static synchronized void startPeriodicLog() {
+        if (!ENABLED || LOG_INTERVAL_SEC <= 0 || logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(Metrics::logSnapshot, LOG_INTERVAL_SEC, LOG_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    public static void logSnapshot() {
+        Logger log = Log.LOG;
+        DatabaseUtil.PoolStats pool = DatabaseUtil.getPoolStats();
+        log.info("pool active={} idle={} total={} waiting={} acquired={} avgWait={}ms maxWait={}ms",
+            pool.active(), pool.idle(), pool.total(), pool.waiting(),
+            pool.acquireCount(), String.format("%.3f", pool.avgWaitMillis()), String.format("%.3f", pool.maxWaitMillis()));
+        for (Timer timer : getTimers().values()) {
+            if (timer.getCount() > 0) {
+                log.info("{}", timer);
+            }
+        }
+    }
+
+    private static void register(Timer timer) {
+        REGISTRAR.execute(() -> registerNow(timer));
+    }
+
+    private static void registerNow(Timer timer) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(timer, new ObjectName("pharma:type=Timer,name=" + ObjectName.quote(timer.getName())));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by an earlier class loader, the old bean keeps its numbers
+        } catch (JMException e) {
+            Log.LOG.warn("Could not register timer {} with JMX", timer.getName(), e);
+        }
+    }
+
+    // The logger is created on first use, so loading this class does not start the logging backend
+    private static final class Log {
+        static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+    }
+
+    public interface TimerMXBean {
+        String getName();
+        long getCount();
+        long getErrorCount();
+        double getErrorRate();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP95Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    /**
+     * Log-linear histogram: each power of two is split into SUB_BUCKETS
+     * equal buckets, so percentiles are within about 12% of the real value
+     * while recording stays a couple of atomic adds.
+     */
+    public static final class Timer implements TimerMXBean {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public Sample time() {
+            return ENABLED ? new Sample(this) : NOOP;
+        }
+
+        /** Records a duration measured elsewhere, e.g. a callback from the pool. */
+        public void record(long nanos, boolean success) {
+            if (!ENABLED) {
+                return;
+            }
+            long value = Math.max(0, nanos);
+            count.increment();
+            if (!success) {
+                errors.increment();
+            }
+            totalNanos.add(value);
+            maxNanos.accumulateAndGet(value, Math::max);
+            buckets.incrementAndGet(bucketOf(value));
+        }
+
+        private static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // Upper bound of the bucket in nanoseconds
+        private static long bucketLimit(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        private double percentileMillis(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(bucketLimit(i), maxNanos.get()) / 1e6;
+                }
+            }
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getErrorRate() {
+            long calls = count.sum();
+            return calls == 0 ? 0.0 : (double) errors.sum() / calls;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long calls = count.sum();
+            return calls == 0 ? 0.0 : totalNanos.sum() / 1e6 / calls;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileMillis(0.50);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentileMillis(0.95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s count=%d errors=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                name, getCount(), getErrorCount(), getMeanMillis(), getP50Millis(), getP95Millis(),
+                getP99Millis(), getMaxMillis());
+        }
+    }
+
+    /** One timed call. Not thread-safe, use it from the thread that started it. */
+    public static final class Sample implements AutoCloseable {
+        private final Timer timer;
+        private final long start;
+        private boolean success;
+
+        private Sample(Timer timer) {
+            this.timer = timer;
+            this.start = timer != null ? System.nanoTime() : 0L;
+        }
+
+        public void success() {
+            success = true;
+        }
+
+        @Override
+        public void close() {
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, success);
+            }
+        }
+    }
+}
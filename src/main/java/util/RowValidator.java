@@ -0,0 +1,152 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validation rules for table rows, declared once per table and compiled
+ * per column layout into a list of (value index, check) pairs, so that
+ * validating a row is a few char loops with no column name lookups.
+ *
+ * A rule only applies when its column is present and the value is not
+ * null; columns without rules are passed through. Rules run in the order
+ * they are declared, which is also the order errors are reported in.
+ */
+public final class RowValidator {
+    private record Rule(String column, FieldCheck check, String message) {
+    }
+
+    private static final Map<String, List<Rule>> RULES = new LinkedHashMap<>();
+
+    static {
+        rules("customer",
+            new Rule("Name", FieldCheck.PERSON_NAME,
+                "Invalid Name. Must be 2-50 characters long and contain only letters and spaces."),
+            new Rule("Phone", FieldCheck.PHONE, "Invalid Phone Number. Must be 10 digits."),
+            new Rule("Email", FieldCheck.EMAIL, "Invalid Email Format."));
+        rules("product",
+            new Rule("Name", FieldCheck.NOT_BLANK, "Product name cannot be empty."),
+            new Rule("Price", FieldCheck.PRICE, "Invalid Price Format. Must be a number with up to 2 decimal places."),
+            new Rule("Stock", FieldCheck.COUNT, "Invalid Stock. Must be a whole number."));
+        rules("orders",
+            new Rule("Customer_ID", FieldCheck.POSITIVE_COUNT, "Invalid Customer ID."),
+            new Rule("Order_Date", FieldCheck.DATE, "Invalid Order Date. Must be yyyy-mm-dd."));
+        rules("orderdetails",
+            new Rule("Order_ID", FieldCheck.POSITIVE_COUNT, "Invalid Order ID."),
+            new Rule("Product_ID", FieldCheck.POSITIVE_COUNT, "Invalid Product ID."),
+            new Rule("Quantity", FieldCheck.POSITIVE_COUNT, "Invalid Quantity. Must be a whole number above zero."),
+            new Rule("PriceAtPurchase", FieldCheck.PRICE,
+                "Invalid Price At Purchase. Must be a number with up to 2 decimal places."),
+            new Rule("Subtotal", FieldCheck.PRICE, "Invalid Subtotal. Must be a number with up to 2 decimal places."));
+    }
+
+    private static void rules(String table, Rule... rules) {
+        RULES.put(table, List.of(rules));
+    }
+
+    private record Key(String table, List<String> columns) {
+    }
+
+    private static final Map<Key, RowValidator> COMPILED = new ConcurrentHashMap<>();
+    private static final RowValidator NONE = new RowValidator(new int[0], new FieldCheck[0], new String[0]);
+
+    // Parallel arrays, one entry per applicable rule
+    private final int[] indices;
+    private final FieldCheck[] checks;
+    private final String[] messages;
+
+    private RowValidator(int[] indices, FieldCheck[] checks, String[] messages) {
+        this.indices = indices;
+        this.checks = checks;
+        this.messages = messages;
+    }
+
+    /**
+     * The validator for rows of the table laid out as columnNames. Compiled
+     * on first use and cached; tables without rules get one that accepts
+     * everything.
+     */
+    public static RowValidator forColumns(String tableName, List<String> columnNames) {
+        Key key = new Key(tableName, columnNames);
+        RowValidator validator = COMPILED.get(key);
+        if (validator == null) {
+            validator = compile(tableName, columnNames);
+            COMPILED.putIfAbsent(new Key(tableName, List.copyOf(columnNames)), validator);
+        }
+        return validator;
+    }
+
+    private static RowValidator compile(String tableName, List<String> columnNames) {
+        List<Rule> rules = RULES.get(tableName.toLowerCase());
+        if (rules == null) {
+            return NONE;
+        }
+        List<int[]> bound = new ArrayList<>();
+        for (int r = 0; r < rules.size(); r++) {
+            // The last column of that name wins, as in the old name scan
+            int index = -1;
+            for (int i = 0; i < columnNames.size(); i++) {
+                if (columnNames.get(i).equalsIgnoreCase(rules.get(r).column())) {
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                bound.add(new int[]{r, index});
+            }
+        }
+
+        int[] indices = new int[bound.size()];
+        FieldCheck[] checks = new FieldCheck[bound.size()];
+        String[] messages = new String[bound.size()];
+        for (int i = 0; i < bound.size(); i++) {
+            Rule rule = rules.get(bound.get(i)[0]);
+            indices[i] = bound.get(i)[1];
+            checks[i] = rule.check();
+            messages[i] = rule.message();
+        }
+        return new RowValidator(indices, checks, messages);
+    }
+
+    /** The first error in the row, or null if it is valid. */
+    public String validate(List<String> values) {
+        for (int i = 0; i < indices.length; i++) {
+            String value = values.get(indices[i]);
+            if (value != null && !checks[i].test(value)) {
+                return messages[i];
+            }
+        }
+        return null;
+    }
+
+    /** Every error in the row, empty if it is valid. */
+    public List<String> validateAll(List<String> values) {
+        List<String> errors = null;
+        for (int i = 0; i < indices.length; i++) {
+            String value = values.get(indices[i]);
+            if (value != null && !checks[i].test(value)) {
+                if (errors == null) {
+                    errors = new ArrayList<>(indices.length);
+                }
+                errors.add(messages[i]);
+            }
+        }
+        return errors == null ? Collections.emptyList() : errors;
+    }
+
+    /** Every error in every row, by row index; rows without errors are absent. */
+    public Map<Integer, List<String>> validateBatch(List<? extends List<String>> rows) {
+        Map<Integer, List<String>> errors = new TreeMap<>();
+        for (int row = 0; row < rows.size(); row++) {
+            List<String> rowErrors = validateAll(rows.get(row));
+            if (!rowErrors.isEmpty()) {
+                errors.put(row, rowErrors);
+            }
+        }
+        return errors;
+    }
+}